@@ -5,6 +5,10 @@ public class EmployeeImpl implements Employee {
     private String firstName;
     private String lastName;
     protected Employee manager;
+    /**
+     * Индекс, первым зарегистрировавший сотрудника, или <code>null</code>
+     */
+    OrgChart chart;
 
     /**
      * @return Зарплата сотрудника на настоящий момент.
@@ -18,10 +22,11 @@ public class EmployeeImpl implements Employee {
      * Увеличивает зарплату сотрудника на заданное значение
      *
      * @param value Значение, на которое нужно увеличить
+     * @throws ArithmeticException если новая зарплата не помещается в <code>int</code> (зарплата не меняется)
      */
     @Override
     public void increaseSalary(int value) {
-        salary += value;
+        salary = Math.addExact(salary, value);
     }
 
     /**
@@ -73,10 +78,18 @@ public class EmployeeImpl implements Employee {
      *
      * @param manager Сотрудник, являющийся менеджером данного сотрудника.
      *                НЕ следует предполагать, что менеджер является экземпляром класса EmployeeImpl.
+     * @throws IllegalArgumentException если сотрудник из {@link OrgChart}, а новый менеджер в этом индексе ниже него
      */
     @Override
     public void setManager(Employee manager) {
+        OrgChart owner = chart;
+        if (owner != null) {
+            owner.beforeChange(this, manager);
+        }
         this.manager = manager;
+        if (owner != null) {
+            owner.afterChange(this);
+        }
     }
 
     /**
@@ -85,25 +98,20 @@ public class EmployeeImpl implements Employee {
      */
     @Override
     public String getManagerName() {
-        return manager.getFullName();
+        return manager == null ? "No manager" : manager.getFullName();
     }
 
     /**
      * Возвращает Менеджера верхнего уровня, т.е. вершину иерархии сотрудников,
      * в которую входит данный сотрудник.
      * Если над данным сотрудником нет ни одного менеджера, возвращает данного сотрудника.
-     * Замечание: поскольку менеджер, установленный методом {@link #setManager(Employee)},
-     * может быть экзепляром другого класса, при поиске топ-менеджера нельзя обращаться
-     * к полям класса EmployeeImpl. Более того, поскольку в интерфейсе Employee не объявлено
-     * метода getManager(), поиск топ-менеджера невозможно организовать в виде цикла.
-     * Вместо этого нужно использовать рекурсию (и это "более объектно-ориентированно").
+     * Цепочка менеджеров EmployeeImpl проходится циклом ({@link ManagerChain}); на менеджере другого класса
+     * поиск передается его методу getTopManager().
+     *
+     * @throws IllegalStateException если цепочка менеджеров зацикливается или длиннее {@link ManagerChain#DEFAULT_MAX_DEPTH}
      */
     @Override
     public Employee getTopManager() {
-        if (manager != null) {
-            return manager.getTopManager();
-        } else {
-            return this;
-        }
+        return ManagerChain.getDefault().getTopManager(this);
     }
 }
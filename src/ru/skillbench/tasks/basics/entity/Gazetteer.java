@@ -0,0 +1,257 @@
+package ru.skillbench.tasks.basics.entity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Справочник мест с кешированием адресов.<br/>
+ * Места создаются методом {@link #intern(String, Location.Type, Location)}: для одинаковых названия, типа и
+ * родительского места возвращается один и тот же объект {@link LocationImpl}. Для каждого места справочник хранит
+ * элемент адреса (название с префиксом типа или без него) и весь адрес ({@link Location#getAddress()}), который
+ * вычисляется один раз и служит окончанием адреса для всех дочерних мест.<br/>
+ * Места справочника сообщают ему о вызовах {@link LocationImpl#setName(String)}, {@link LocationImpl#setType(Location.Type)}
+ * и {@link LocationImpl#setParent(Location)}: кешированные адреса сбрасываются только у измененного места и его потомков,
+ * а элемент адреса - только у измененного места.<br/>
+ * Все обходы нерекурсивны. Экземпляр не потокобезопасен.
+ */
+public class Gazetteer {
+    /**
+     * Название уже содержит префикс или суффикс типа: точка до первого пробельного символа или в конце
+     */
+    private static final Pattern HAS_AFFIX = Pattern.compile("(\\S+\\..*)|(.*(?:[.]))");
+
+    private final Map<Key, LocationImpl> interned = new HashMap<>();
+    private final Map<Location, Entry> entries = new IdentityHashMap<>();
+    /**
+     * Места без родительского места
+     */
+    private final ArrayList<Entry> roots = new ArrayList<>();
+
+    /**
+     * @return Место справочника с заданными названием, типом и родительским местом; новое, если такого еще нет
+     * @throws IllegalArgumentException если родительское место не из этого справочника
+     */
+    public LocationImpl intern(String name, Location.Type type, Location parent) {
+        Entry parentEntry = parent == null ? null : get(parent);
+        Key key = new Key(name, type, parent);
+        LocationImpl location = interned.get(key);
+        if (location == null) {
+            location = new LocationImpl();
+            location.setName(name);
+            location.setType(type);
+            location.setParent(parent);
+            location.gazetteer = this;
+            Entry entry = new Entry(location);
+            entries.put(location, entry);
+            link(entry, parentEntry);
+            interned.put(key, location);
+        }
+        return location;
+    }
+
+    /**
+     * @return <code>true</code>, если место из этого справочника
+     */
+    public boolean contains(Location location) {
+        return entries.containsKey(location);
+    }
+
+    /**
+     * @return Число мест в справочнике
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Родительское место или <code>null</code>
+     * @throws IllegalArgumentException если место не из этого справочника
+     */
+    public Location getParent(Location location) {
+        Entry parent = get(location).parent;
+        return parent == null ? null : parent.location;
+    }
+
+    /**
+     * То же, что {@link Location#getAddress()}, но без повторного построения уже вычисленных адресов.
+     *
+     * @throws IllegalArgumentException если место не из этого справочника
+     */
+    public String getAddress(Location location) {
+        Entry entry = get(location);
+        if (entry.address != null) {
+            return entry.address;
+        }
+        ArrayList<Entry> chain = new ArrayList<>();
+        Entry node = entry;
+        while (node != null && node.address == null) {
+            chain.add(node);
+            node = node.parent;
+        }
+        String suffix = node == null ? null : node.address;
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            Entry current = chain.get(i);
+            if (current.element == null) {
+                current.element = toAddressElement(current.location.getName(), current.location.getType());
+            }
+            current.address = suffix == null ? current.element : current.element + ", " + suffix;
+            suffix = current.address;
+        }
+        return entry.address;
+    }
+
+    /**
+     * @return Элемент адреса: название, если оно уже содержит префикс или суффикс типа, иначе префикс типа и название
+     */
+    static String toAddressElement(String name, Location.Type type) {
+        return HAS_AFFIX.matcher(name).matches() ? name : type.getNameForAddress() + name;
+    }
+
+    /**
+     * Вызывается местом справочника перед изменением названия, типа или родительского места
+     *
+     * @param parent Новое родительское место
+     * @throws IllegalArgumentException если новое родительское место не из этого справочника
+     *                                  или в иерархии появился бы цикл
+     */
+    void beforeChange(LocationImpl location, Location parent) {
+        Entry entry = get(location);
+        if (parent != null && get(parent).isBelow(entry)) {
+            throw new IllegalArgumentException("Cycle in locations: " + location + " is above " + parent);
+        }
+        Key key = new Key(location.getName(), location.getType(), location.parent);
+        if (interned.get(key) == location) {
+            interned.remove(key);
+            // ключ переходит к другому месту с теми же названием, типом и родителем, если оно есть
+            for (Entry sibling : children(entry.parent)) {
+                if (sibling != entry && key.equals(sibling.key())) {
+                    interned.put(key, sibling.location);
+                    break;
+                }
+            }
+        }
+        entry.element = null;
+        invalidate(entry);
+    }
+
+    /**
+     * Вызывается местом справочника после изменения названия, типа или родительского места
+     */
+    void afterChange(LocationImpl location) {
+        Entry entry = get(location);
+        Entry parent = location.parent == null ? null : get(location.parent);
+        if (entry.parent != parent) {
+            children(entry.parent).remove(entry);
+            link(entry, parent);
+        }
+        interned.putIfAbsent(entry.key(), location);
+    }
+
+    private Entry get(Location location) {
+        Entry entry = entries.get(location);
+        if (entry == null) {
+            throw new IllegalArgumentException("Location is not in the gazetteer: " + location);
+        }
+        return entry;
+    }
+
+    /**
+     * @return Дочерние места <code>parent</code> или места верхнего уровня, если <code>parent == null</code>
+     */
+    private ArrayList<Entry> children(Entry parent) {
+        return parent == null ? roots : parent.children;
+    }
+
+    private void link(Entry entry, Entry parent) {
+        entry.parent = parent;
+        children(parent).add(entry);
+    }
+
+    /**
+     * Сбрасывает кешированные адреса в поддереве <code>entry</code>
+     */
+    private static void invalidate(Entry entry) {
+        if (entry.address == null) {
+            // адрес потомка вычисляется только после адреса предка, поэтому ниже кешированных адресов нет
+            return;
+        }
+        ArrayList<Entry> subtree = new ArrayList<>();
+        subtree.add(entry);
+        for (int i = 0; i < subtree.size(); i++) {
+            Entry node = subtree.get(i);
+            node.address = null;
+            for (Entry child : node.children) {
+                if (child.address != null) {
+                    subtree.add(child);
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final LocationImpl location;
+        private final ArrayList<Entry> children = new ArrayList<>(0);
+        private Entry parent;
+        /**
+         * Кешированный элемент адреса или <code>null</code>
+         */
+        private String element;
+        /**
+         * Кешированный адрес или <code>null</code>
+         */
+        private String address;
+
+        Entry(LocationImpl location) {
+            this.location = location;
+        }
+
+        Key key() {
+            return new Key(location.getName(), location.getType(), location.parent);
+        }
+
+        /**
+         * @return <code>true</code>, если это место - <code>other</code> или один из его потомков
+         */
+        boolean isBelow(Entry other) {
+            for (Entry node = this; node != null; node = node.parent) {
+                if (node == other) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Ключ интернирования: название, тип и родительское место (сравнивается по ссылке)
+     */
+    private static final class Key {
+        private final String name;
+        private final Location.Type type;
+        private final Location parent;
+
+        Key(String name, Location.Type type, Location parent) {
+            this.name = name;
+            this.type = type;
+            this.parent = parent;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return parent == key.parent && type == key.type && Objects.equals(name, key.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Objects.hashCode(name) * 31 + Objects.hashCode(type)) * 31 + System.identityHashCode(parent);
+        }
+    }
+}
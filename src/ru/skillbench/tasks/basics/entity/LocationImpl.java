@@ -2,8 +2,12 @@ package ru.skillbench.tasks.basics.entity;
 
 public class LocationImpl implements Location {
     private String name;
-    private Location parent;
+    Location parent;
     Type type;
+    /**
+     * Справочник, которому принадлежит место, или <code>null</code>
+     */
+    Gazetteer gazetteer;
 
     /**
      * @return Название места
@@ -18,7 +22,14 @@ public class LocationImpl implements Location {
      */
     @Override
     public void setName(String name) {
+        Gazetteer owner = gazetteer;
+        if (owner != null) {
+            owner.beforeChange(this, parent);
+        }
         this.name = name;
+        if (owner != null) {
+            owner.afterChange(this);
+        }
     }
 
     /**
@@ -35,16 +46,32 @@ public class LocationImpl implements Location {
      */
     @Override
     public void setType(Type type) {
+        Gazetteer owner = gazetteer;
+        if (owner != null) {
+            owner.beforeChange(this, parent);
+        }
         this.type = type;
+        if (owner != null) {
+            owner.afterChange(this);
+        }
     }
 
     /**
      * @param parent "Родительское" место - то, чьей частью является данное место.
      *               Например, если данное место - это улица, то родительским местом может быть район или город.
+     * @throws IllegalArgumentException если место из {@link Gazetteer}, а новое родительское место - из другого справочника
+     *                                  или ниже данного места
      */
     @Override
     public void setParent(Location parent) {
+        Gazetteer owner = gazetteer;
+        if (owner != null) {
+            owner.beforeChange(this, parent);
+        }
         this.parent = parent;
+        if (owner != null) {
+            owner.afterChange(this);
+        }
     }
 
     /**
@@ -103,13 +130,17 @@ public class LocationImpl implements Location {
      * Пример названий с префиксом/суффиксом, удовлетворяющих условию пункта 1: "Московская обл.", "туп. Гранитный", "оф. 321".<br/>
      * Пример названий без префикса/суффикса, НЕ удовлетворяющих этому условию: "Москва", "25 к. 2"<br/>
      *
+     * Адрес места из {@link Gazetteer} берется из его кеша.
+     *
      * @return адрес, составленный из имен (и типов) всех мест, начиная с данного места до {@link #getTopLocation()}
      */
     @Override
     public String getAddress() {
-        if (parent != null) {
-            return (name.matches("(\\S+\\..*)|(.*(?:[.]))") ? name : (type.getNameForAddress() + getName())) + ", "  + parent.getAddress() ;
-        } else return (name.matches("(\\S+\\..*)|(.*(?:[.]))") ? name : (type.getNameForAddress() + getName()));
+        if (gazetteer != null) {
+            return gazetteer.getAddress(this);
+        }
+        String element = Gazetteer.toAddressElement(name, type);
+        return parent == null ? element : element + ", " + parent.getAddress();
     }
 
     /**
@@ -0,0 +1,161 @@
+package ru.skillbench.tasks.basics.entity;
+
+/**
+ * Нерекурсивный обход цепочки менеджеров с обнаружением циклов.<br/>
+ * Менеджер {@link EmployeeImpl} берется из его поля; у сотрудника другого класса менеджер недоступен
+ * (в интерфейсе {@link Employee} нет метода getManager()), поэтому на нем обход останавливается:
+ * {@link #getTopManager(Employee)} передает поиск его собственному {@link Employee#getTopManager()}.<br/>
+ * Цикл (например, после ошибочного {@link Employee#setManager(Employee)}) находится алгоритмом Флойда
+ * ("черепаха и заяц"): второй указатель идет по цепочке вдвое медленнее и в цикле обязательно встречается с первым.
+ * Поэтому обход не выделяет памяти и проходит не больше чем примерно втрое больше шагов, чем длина цепочки;
+ * память выделяется только для сообщения об ошибке.<br/>
+ * Экземпляр неизменяем и потокобезопасен (если цепочку никто не меняет во время обхода).
+ */
+public final class ManagerChain {
+    /**
+     * Максимальная глубина по умолчанию
+     */
+    public static final int DEFAULT_MAX_DEPTH = 1 << 20;
+    /**
+     * Сколько сотрудников цикла перечисляется в сообщении об ошибке
+     */
+    private static final int DIAGNOSTIC_NAMES = 8;
+    private static final ManagerChain DEFAULT = new ManagerChain(DEFAULT_MAX_DEPTH);
+
+    private final int maxDepth;
+
+    /**
+     * @param maxDepth Наибольшее допустимое число менеджеров над сотрудником
+     * @throws IllegalArgumentException если <code>maxDepth &lt; 0</code>
+     */
+    public ManagerChain(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @return Обход с глубиной {@link #DEFAULT_MAX_DEPTH}
+     */
+    public static ManagerChain getDefault() {
+        return DEFAULT;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return Непосредственный менеджер сотрудника {@link EmployeeImpl}; <code>null</code>, если его нет
+     * или сотрудник другого класса
+     */
+    public static Employee getManager(Employee employee) {
+        return employee instanceof EmployeeImpl ? ((EmployeeImpl) employee).manager : null;
+    }
+
+    /**
+     * То же, что {@link Employee#getTopManager()}, но без рекурсии по цепочке {@link EmployeeImpl}.
+     *
+     * @throws IllegalStateException если в цепочке есть цикл или она длиннее {@link #getMaxDepth()}
+     */
+    public Employee getTopManager(Employee employee) {
+        Employee fast = employee;
+        Employee slow = employee;
+        int depth = 0;
+        while (true) {
+            Employee next = getManager(fast);
+            if (next == null) {
+                return fast instanceof EmployeeImpl ? fast : fast.getTopManager();
+            }
+            fast = next;
+            slow = step(employee, slow, fast, ++depth);
+        }
+    }
+
+    /**
+     * @return Число менеджеров над сотрудником (у топ-менеджера 0); цепочка считается до первого сотрудника не
+     * {@link EmployeeImpl}
+     * @throws IllegalStateException если в цепочке есть цикл или она длиннее {@link #getMaxDepth()}
+     */
+    public int getDepth(Employee employee) {
+        Employee fast = employee;
+        Employee slow = employee;
+        int depth = 0;
+        for (Employee next = getManager(fast); next != null; next = getManager(fast)) {
+            fast = next;
+            slow = step(employee, slow, fast, ++depth);
+        }
+        return depth;
+    }
+
+    /**
+     * @return <code>true</code>, если цепочка менеджеров сотрудника зацикливается
+     */
+    public static boolean hasCycle(Employee employee) {
+        Employee fast = employee;
+        Employee slow = employee;
+        int depth = 0;
+        for (Employee next = getManager(fast); next != null; next = getManager(fast)) {
+            fast = next;
+            if ((++depth & 1) == 0) {
+                slow = getManager(slow);
+                if (slow == fast) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Проверяет глубину и на каждом втором шаге продвигает "черепаху"
+     *
+     * @return Новое положение "черепахи"
+     */
+    private Employee step(Employee employee, Employee slow, Employee fast, int depth) {
+        if ((depth & 1) == 0) {
+            slow = getManager(slow);
+            if (slow == fast) {
+                throw new IllegalStateException(describeCycle(employee, fast));
+            }
+        }
+        if (depth > maxDepth) {
+            throw new IllegalStateException("Manager chain of " + employee.getFullName()
+                    + " is deeper than " + maxDepth);
+        }
+        return slow;
+    }
+
+    /**
+     * @param meeting Сотрудник внутри цикла
+     * @return Сообщение с началом цикла, его длиной и первыми сотрудниками цикла
+     */
+    private static String describeCycle(Employee employee, Employee meeting) {
+        int length = 1;
+        for (Employee node = getManager(meeting); node != meeting; node = getManager(node)) {
+            length++;
+        }
+        // указатель, опережающий другой на длину цикла, встречается с ним в начале цикла
+        Employee ahead = employee;
+        for (int i = 0; i < length; i++) {
+            ahead = getManager(ahead);
+        }
+        Employee entry = employee;
+        int tail = 0;
+        while (entry != ahead) {
+            entry = getManager(entry);
+            ahead = getManager(ahead);
+            tail++;
+        }
+        StringBuilder message = new StringBuilder("Cycle in manager chain of ").append(employee.getFullName())
+                .append(" after ").append(tail).append(tail == 1 ? " step" : " steps")
+                .append(", cycle length ").append(length).append(": ");
+        Employee node = entry;
+        for (int i = 0; i < Math.min(length, DIAGNOSTIC_NAMES); i++) {
+            message.append(node.getFullName()).append(" -> ");
+            node = getManager(node);
+        }
+        return message.append(length > DIAGNOSTIC_NAMES ? "... -> " : "").append(entry.getFullName()).toString();
+    }
+}
@@ -0,0 +1,324 @@
+package ru.skillbench.tasks.basics.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Индекс иерархии сотрудников.<br/>
+ * В интерфейсе {@link Employee} нет метода getManager(), поэтому связи "сотрудник - менеджер" хранит сам индекс:
+ * они задаются через {@link #add(Employee, Employee)} и {@link #setManager(Employee, Employee)}
+ * (у {@link EmployeeImpl} менеджер берется из его поля при {@link #add(Employee)}).
+ * Для каждого сотрудника индекс хранит менеджера, список подчиненных, а также лениво вычисляемые топ-менеджера
+ * и глубину в иерархии. При смене менеджера кешированные значения сбрасываются только в поддереве перемещенного сотрудника.<br/>
+ * {@link EmployeeImpl} сообщает о вызовах {@link EmployeeImpl#setManager(Employee)} индексу, который зарегистрировал его
+ * первым, поэтому этот индекс не устаревает и при смене менеджера в обход {@link #setManager(Employee, Employee)}.
+ * Другие индексы с тем же сотрудником и сотрудники других классов таких изменений не видят.<br/>
+ * Все обходы нерекурсивны. Экземпляр не потокобезопасен.
+ */
+public class OrgChart {
+    private final Map<Employee, Entry> entries = new IdentityHashMap<>();
+
+    /**
+     * Регистрирует сотрудника; для {@link EmployeeImpl} регистрируется и вся цепочка его менеджеров.
+     */
+    public void add(Employee employee) {
+        Entry entry = entry(employee);
+        while (employee instanceof EmployeeImpl && entry.manager == null) {
+            Employee manager = ((EmployeeImpl) employee).manager;
+            if (manager == null || entries.containsKey(manager) && entries.get(manager).isAbove(entry)) {
+                break;
+            }
+            Entry managerEntry = entry(manager);
+            link(entry, managerEntry);
+            invalidate(entry);
+            employee = manager;
+            entry = managerEntry;
+        }
+    }
+
+    /**
+     * Регистрирует сотрудника с заданным менеджером (или меняет менеджера уже зарегистрированного сотрудника).
+     *
+     * @throws IllegalArgumentException если в иерархии появился бы цикл
+     */
+    public void add(Employee employee, Employee manager) {
+        setManager(employee, manager);
+    }
+
+    /**
+     * Меняет менеджера сотрудника ({@link Employee#setManager(Employee)}) и обновляет индекс.
+     * Незарегистрированные сотрудник и менеджер регистрируются; менеджер - вместе с цепочкой своих менеджеров,
+     * как в {@link #add(Employee)}.
+     *
+     * @param manager Новый менеджер или <code>null</code>
+     * @throws IllegalArgumentException если в иерархии появился бы цикл
+     */
+    public void setManager(Employee employee, Employee manager) {
+        Entry entry = entry(employee);
+        if (manager != null && !entries.containsKey(manager)) {
+            add(manager);
+        }
+        Entry managerEntry = manager == null ? null : get(manager);
+        if (managerEntry != null && entry.isAbove(managerEntry)) {
+            throw new IllegalArgumentException("Cycle in hierarchy: " + employee.getFullName()
+                    + " is above " + manager.getFullName());
+        }
+        employee.setManager(manager);
+        // сотрудник EmployeeImpl этого индекса уже перенесен из своего setManager
+        if (entry.manager != managerEntry) {
+            relink(entry, managerEntry);
+        }
+    }
+
+    /**
+     * Вызывается сотрудником этого индекса перед сменой менеджера; незарегистрированный менеджер регистрируется
+     * вместе с цепочкой своих менеджеров, как в {@link #add(Employee)}
+     *
+     * @param manager Новый менеджер
+     * @throws IllegalArgumentException если в иерархии появился бы цикл
+     */
+    void beforeChange(EmployeeImpl employee, Employee manager) {
+        if (manager != null && !entries.containsKey(manager)) {
+            add(manager);
+        }
+        Entry managerEntry = manager == null ? null : entries.get(manager);
+        if (managerEntry != null && get(employee).isAbove(managerEntry)) {
+            throw new IllegalArgumentException("Cycle in hierarchy: " + employee.getFullName()
+                    + " is above " + manager.getFullName());
+        }
+    }
+
+    /**
+     * Вызывается сотрудником этого индекса после смены менеджера
+     */
+    void afterChange(EmployeeImpl employee) {
+        Entry entry = get(employee);
+        Entry managerEntry = employee.manager == null ? null : get(employee.manager);
+        if (entry.manager != managerEntry) {
+            relink(entry, managerEntry);
+        }
+    }
+
+    /**
+     * @return <code>true</code>, если сотрудник зарегистрирован
+     */
+    public boolean contains(Employee employee) {
+        return entries.containsKey(employee);
+    }
+
+    /**
+     * @return Число зарегистрированных сотрудников
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Непосредственный менеджер или <code>null</code>
+     * @throws IllegalArgumentException если сотрудник не зарегистрирован
+     */
+    public Employee getManager(Employee employee) {
+        Entry manager = get(employee).manager;
+        return manager == null ? null : manager.employee;
+    }
+
+    /**
+     * То же, что {@link Employee#getTopManager()}, но за O(1) для уже вычисленных сотрудников.
+     *
+     * @throws IllegalArgumentException если сотрудник не зарегистрирован
+     */
+    public Employee getTopManager(Employee employee) {
+        return resolve(get(employee)).top.employee;
+    }
+
+    /**
+     * @return Число менеджеров над сотрудником (у топ-менеджера 0)
+     * @throws IllegalArgumentException если сотрудник не зарегистрирован
+     */
+    public int getDepth(Employee employee) {
+        return resolve(get(employee)).depth;
+    }
+
+    /**
+     * @return Непосредственные подчиненные
+     * @throws IllegalArgumentException если сотрудник не зарегистрирован
+     */
+    public List<Employee> getDirectReports(Employee manager) {
+        ArrayList<Employee> result = new ArrayList<>();
+        for (Entry report : get(manager).reports) {
+            result.add(report.employee);
+        }
+        return result;
+    }
+
+    /**
+     * @return Все сотрудники под менеджером <code>manager</code> (без него самого) в порядке обхода в ширину
+     * @throws IllegalArgumentException если сотрудник не зарегистрирован
+     */
+    public List<Employee> getSubordinates(Employee manager) {
+        ArrayList<Entry> subtree = subtree(get(manager));
+        ArrayList<Employee> result = new ArrayList<>(subtree.size() - 1);
+        for (int i = 1; i < subtree.size(); i++) {
+            result.add(subtree.get(i).employee);
+        }
+        return result;
+    }
+
+    /**
+     * @return Сумма зарплат менеджера и всех его подчиненных
+     * @throws IllegalArgumentException если сотрудник не зарегистрирован
+     */
+    public long getSalarySum(Employee manager) {
+        long sum = 0;
+        for (Entry entry : subtree(get(manager))) {
+            sum += entry.employee.getSalary();
+        }
+        return sum;
+    }
+
+    /**
+     * @return Сумма зарплат по каждой иерархии: топ-менеджер -&gt; сумма зарплат всех сотрудников под ним и его самого
+     */
+    public Map<Employee, Long> getSalarySumByTopManager() {
+        HashMap<Employee, Long> result = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            result.merge(resolve(entry).top.employee, (long) entry.employee.getSalary(), Long::sum);
+        }
+        return result;
+    }
+
+    /**
+     * @return Все топ-менеджеры (сотрудники без менеджера)
+     */
+    public List<Employee> getTopManagers() {
+        ArrayList<Employee> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.manager == null) {
+                result.add(entry.employee);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private Entry get(Employee employee) {
+        Entry entry = entries.get(employee);
+        if (entry == null) {
+            throw new IllegalArgumentException("Employee is not in the chart: " + employee);
+        }
+        return entry;
+    }
+
+    private Entry entry(Employee employee) {
+        Entry entry = entries.get(employee);
+        if (entry == null) {
+            entry = new Entry(employee);
+            entries.put(employee, entry);
+            if (employee instanceof EmployeeImpl && ((EmployeeImpl) employee).chart == null) {
+                ((EmployeeImpl) employee).chart = this;
+            }
+        }
+        return entry;
+    }
+
+    private static void link(Entry entry, Entry manager) {
+        entry.manager = manager;
+        manager.reports.add(entry);
+    }
+
+    /**
+     * Переносит <code>entry</code> к новому менеджеру (или делает его топ-менеджером) и сбрасывает кеш его поддерева
+     */
+    private static void relink(Entry entry, Entry manager) {
+        if (entry.manager != null) {
+            entry.manager.reports.remove(entry);
+            entry.manager = null;
+        }
+        if (manager != null) {
+            link(entry, manager);
+        }
+        invalidate(entry);
+    }
+
+    /**
+     * Сбрасывает кешированные топ-менеджера и глубину в поддереве <code>entry</code>
+     */
+    private static void invalidate(Entry entry) {
+        if (entry.top == null) {
+            // поддерево уже сброшено: значения ниже вычисляются только через этот узел
+            return;
+        }
+        for (Entry node : subtree(entry)) {
+            node.top = null;
+        }
+    }
+
+    /**
+     * Вычисляет топ-менеджера и глубину, поднимаясь до ближайшего предка с известными значениями,
+     * и запоминает их для всех пройденных узлов
+     */
+    private static Entry resolve(Entry entry) {
+        if (entry.top != null) {
+            return entry;
+        }
+        ArrayList<Entry> chain = new ArrayList<>();
+        Entry node = entry;
+        while (node.top == null && node.manager != null) {
+            chain.add(node);
+            node = node.manager;
+        }
+        if (node.top == null) {
+            node.top = node;
+            node.depth = 0;
+        }
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            Entry current = chain.get(i);
+            current.top = node.top;
+            current.depth = node.depth + 1;
+            node = current;
+        }
+        return entry;
+    }
+
+    /**
+     * @return Поддерево <code>entry</code> (с ним самим) в порядке обхода в ширину
+     */
+    private static ArrayList<Entry> subtree(Entry entry) {
+        ArrayList<Entry> result = new ArrayList<>();
+        result.add(entry);
+        for (int i = 0; i < result.size(); i++) {
+            result.addAll(result.get(i).reports);
+        }
+        return result;
+    }
+
+    private static final class Entry {
+        private final Employee employee;
+        private final ArrayList<Entry> reports = new ArrayList<>();
+        private Entry manager;
+        /**
+         * Кешированный топ-менеджер или <code>null</code>, если его нужно вычислить
+         */
+        private Entry top;
+        private int depth;
+
+        Entry(Employee employee) {
+            this.employee = employee;
+        }
+
+        /**
+         * @return <code>true</code>, если этот сотрудник - <code>other</code> или один из его менеджеров
+         */
+        boolean isAbove(Entry other) {
+            for (Entry node = other; node != null; node = node.manager) {
+                if (node == this) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
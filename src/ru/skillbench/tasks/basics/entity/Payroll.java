@@ -0,0 +1,339 @@
+package ru.skillbench.tasks.basics.entity;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Пакетный расчет зарплат по столбцам примитивов.<br/>
+ * Сотрудники загружаются в столбцы: номер сотрудника в исходном списке (<code>int</code>), зарплата в копейках
+ * (<code>long</code>, 1/100 единицы {@link Employee#getSalary()}) и номер строки менеджера. Строки упорядочены
+ * по прямому обходу иерархии, поэтому любой отдел (менеджер и все его подчиненные) - это непрерывный диапазон строк,
+ * и повышения по отделу и суммы по отделу - это простые циклы по массиву.<br/>
+ * Изменения накапливаются в столбцах и переносятся в объекты {@link Employee} методом {@link #writeBack()},
+ * который сначала проверяет, что все новые зарплаты помещаются в <code>int</code>, и только затем меняет объекты.
+ * Повышения тоже атомарны: новые зарплаты считаются во временный массив и копируются в столбец, только если
+ * вычисление не выбросило исключение.<br/>
+ * Экземпляр не потокобезопасен (агрегаты считаются параллельно внутри вызова).
+ */
+public class Payroll {
+    /**
+     * Копеек в единице зарплаты
+     */
+    public static final int MINOR_PER_UNIT = 100;
+    /**
+     * Максимальное повышение в базисных пунктах (сотых долях процента): 100-кратное
+     */
+    private static final int MAX_BASIS_POINTS = 1_000_000;
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private final Employee[] employees;
+    /**
+     * Номер сотрудника строки в исходном списке
+     */
+    private final int[] ids;
+    private final long[] salaries;
+    /**
+     * Строка менеджера или -1
+     */
+    private final int[] managers;
+    /**
+     * Конец отдела строки (не включительно): подчиненные строки <code>r</code> - строки <code>(r, ends[r])</code>
+     */
+    private final int[] ends;
+    private final Map<Employee, Integer> rows;
+
+    /**
+     * Загружает сотрудников; менеджеры {@link EmployeeImpl} берутся из их поля,
+     * менеджеры не из списка не учитываются (сотрудник считается топ-менеджером).
+     *
+     * @throws IllegalArgumentException если в цепочке менеджеров есть цикл
+     */
+    public Payroll(List<? extends Employee> employees) {
+        this(employees, null);
+    }
+
+    /**
+     * Загружает сотрудников; менеджеры берутся из <code>chart</code>,
+     * менеджеры не из списка не учитываются (сотрудник считается топ-менеджером).
+     *
+     * @throws IllegalArgumentException если в цепочке менеджеров есть цикл
+     */
+    public Payroll(List<? extends Employee> employees, OrgChart chart) {
+        int n = employees.size();
+        IdentityHashMap<Employee, Integer> indexes = new IdentityHashMap<>(n);
+        for (int i = 0; i < n; i++) {
+            indexes.put(employees.get(i), i);
+        }
+        int[] managerIndex = new int[n];
+        int[] childCount = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            Employee employee = employees.get(i);
+            Employee manager = chart != null ? (chart.contains(employee) ? chart.getManager(employee) : null)
+                    : employee instanceof EmployeeImpl ? ((EmployeeImpl) employee).manager : null;
+            Integer index = manager == null ? null : indexes.get(manager);
+            managerIndex[i] = index == null ? -1 : index;
+            childCount[managerIndex[i] + 1]++;
+        }
+        // подчиненные каждого сотрудника подряд (CSR); "сотрудник -1" - это корень леса
+        int[] firstChild = new int[n + 2];
+        for (int i = 0; i <= n; i++) {
+            firstChild[i + 1] = firstChild[i] + childCount[i];
+        }
+        int[] children = new int[n];
+        int[] fill = Arrays.copyOf(firstChild, n + 1);
+        for (int i = 0; i < n; i++) {
+            children[fill[managerIndex[i] + 1]++] = i;
+        }
+
+        this.employees = new Employee[n];
+        this.ids = new int[n];
+        this.salaries = new long[n];
+        this.managers = new int[n];
+        this.ends = new int[n];
+        this.rows = new IdentityHashMap<>(n);
+        int[] rowOf = new int[n];
+        // прямой обход без рекурсии: стек сотрудников, у которых еще есть непройденные подчиненные
+        int[] stack = new int[n + 1];
+        int[] next = new int[n + 1];
+        int depth = 0;
+        stack[0] = -1;
+        next[0] = firstChild[0];
+        int row = 0;
+        while (depth >= 0) {
+            int node = stack[depth];
+            if (next[depth] < firstChild[node + 2]) {
+                int child = children[next[depth]++];
+                rowOf[child] = row;
+                Employee employee = employees.get(child);
+                this.employees[row] = employee;
+                this.ids[row] = child;
+                this.salaries[row] = (long) employee.getSalary() * MINOR_PER_UNIT;
+                this.managers[row] = node < 0 ? -1 : rowOf[node];
+                this.rows.put(employee, row);
+                row++;
+                depth++;
+                stack[depth] = child;
+                next[depth] = firstChild[child + 1];
+            } else {
+                if (node >= 0) {
+                    ends[rowOf[node]] = row;
+                }
+                depth--;
+            }
+        }
+        if (row != n) {
+            throw new IllegalArgumentException("Cycle in manager chain: " + (n - row) + " employees are unreachable from a top manager");
+        }
+    }
+
+    /**
+     * @return Число сотрудников
+     */
+    public int size() {
+        return employees.length;
+    }
+
+    /**
+     * @return Зарплата сотрудника в копейках (с учетом еще не записанных изменений)
+     * @throws IllegalArgumentException если сотрудника нет в расчете
+     */
+    public long getSalary(Employee employee) {
+        return salaries[row(employee)];
+    }
+
+    /**
+     * @return Номер сотрудника в списке, по которому построен расчет
+     * @throws IllegalArgumentException если сотрудника нет в расчете
+     */
+    public int getId(Employee employee) {
+        return ids[row(employee)];
+    }
+
+    /**
+     * Повышает (или при отрицательном значении понижает) зарплату сотрудников, удовлетворяющих условию.
+     *
+     * @param basisPoints Повышение в сотых долях процента (150 - это 1,5%); результат округляется до копейки
+     * @throws IllegalArgumentException если повышение больше 100-кратного или меньше -100%
+     * @throws ArithmeticException      при переполнении <code>long</code> (зарплаты не меняются)
+     */
+    public void raise(Predicate<? super Employee> condition, int basisPoints) {
+        checkBasisPoints(basisPoints);
+        long[] result = salaries.clone();
+        for (int row = 0; row < result.length; row++) {
+            if (condition.test(employees[row])) {
+                result[row] = raised(result[row], basisPoints);
+            }
+        }
+        System.arraycopy(result, 0, salaries, 0, result.length);
+    }
+
+    /**
+     * Повышает зарплату всему отделу: менеджеру и всем его подчиненным.
+     *
+     * @param basisPoints Повышение в сотых долях процента; результат округляется до копейки
+     * @throws IllegalArgumentException если сотрудника нет в расчете, повышение больше 100-кратного или меньше -100%
+     * @throws ArithmeticException      при переполнении <code>long</code> (зарплаты не меняются)
+     */
+    public void raiseDepartment(Employee manager, int basisPoints) {
+        checkBasisPoints(basisPoints);
+        int from = row(manager);
+        long[] result = new long[ends[from] - from];
+        if (result.length < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = raised(salaries[from + i], basisPoints);
+            }
+        } else {
+            IntStream.range(0, result.length).parallel().forEach(i -> result[i] = raised(salaries[from + i], basisPoints));
+        }
+        System.arraycopy(result, 0, salaries, from, result.length);
+    }
+
+    /**
+     * Прибавляет к зарплате всего отдела (менеджера и всех его подчиненных) фиксированную сумму.
+     *
+     * @param amount Сумма в копейках
+     * @throws IllegalArgumentException если сотрудника нет в расчете
+     * @throws ArithmeticException      при переполнении <code>long</code> (зарплаты не меняются)
+     */
+    public void raiseDepartmentBy(Employee manager, long amount) {
+        int from = row(manager);
+        long[] result = new long[ends[from] - from];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Math.addExact(salaries[from + i], amount);
+        }
+        System.arraycopy(result, 0, salaries, from, result.length);
+    }
+
+    /**
+     * @return Сумма всех зарплат в копейках
+     */
+    public long getTotal() {
+        return sum(0, salaries.length);
+    }
+
+    /**
+     * @return Сумма зарплат отдела (менеджера и всех его подчиненных) в копейках
+     * @throws IllegalArgumentException если сотрудника нет в расчете
+     */
+    public long getDepartmentTotal(Employee manager) {
+        int from = row(manager);
+        return sum(from, ends[from]);
+    }
+
+    /**
+     * @param percentile Перцентиль от 0 до 100 (по ближайшему рангу)
+     * @return Зарплата в копейках, не меньше которой зарплаты <code>percentile</code> процентов сотрудников
+     * @throws IllegalArgumentException если перцентиль вне [0, 100]
+     * @throws IllegalStateException    если сотрудников нет
+     */
+    public long getPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile: " + percentile);
+        }
+        if (salaries.length == 0) {
+            throw new IllegalStateException("No employees");
+        }
+        long[] sorted = salaries.clone();
+        Arrays.parallelSort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * @return Максимальная зарплата (в копейках) среди всех подчиненных каждого менеджера
+     */
+    public Map<Employee, Long> getMaxSalaryPerManager() {
+        long[] max = new long[salaries.length];
+        Arrays.fill(max, Long.MIN_VALUE);
+        // строки подчиненных идут после строки менеджера, поэтому обратный проход поднимает максимум вверх за O(n)
+        for (int row = salaries.length - 1; row >= 0; row--) {
+            int manager = managers[row];
+            if (manager >= 0) {
+                max[manager] = Math.max(max[manager], Math.max(max[row], salaries[row]));
+            }
+        }
+        HashMap<Employee, Long> result = new HashMap<>();
+        for (int row = 0; row < max.length; row++) {
+            if (max[row] != Long.MIN_VALUE) {
+                result.put(employees[row], max[row]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Переносит зарплаты в объекты {@link Employee} через {@link Employee#increaseSalary(int)}, округляя до целых единиц
+     * (половина копеек - вверх). Если хотя бы одна зарплата не помещается в <code>int</code>, ни один объект не меняется.
+     *
+     * @return Число сотрудников, у которых изменилась зарплата
+     * @throws ArithmeticException если новая зарплата какого-либо сотрудника не помещается в <code>int</code>
+     */
+    public int writeBack() {
+        int[] units = new int[salaries.length];
+        for (int row = 0; row < salaries.length; row++) {
+            long value = Math.floorDiv(salaries[row] + MINOR_PER_UNIT / 2, MINOR_PER_UNIT);
+            if (value != (int) value) {
+                throw new ArithmeticException("Salary of " + employees[row].getFullName() + " (employee #" + ids[row]
+                        + ") overflows int: " + value);
+            }
+            units[row] = (int) value;
+        }
+        int changed = 0;
+        for (int row = 0; row < salaries.length; row++) {
+            long delta = (long) units[row] - employees[row].getSalary();
+            if (delta != 0) {
+                changed++;
+            }
+            // разность двух int может не поместиться в int: тогда она прибавляется частями (не больше трех),
+            // и промежуточная зарплата всегда лежит между старой и новой
+            while (delta != 0) {
+                int step = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, delta));
+                employees[row].increaseSalary(step);
+                delta -= step;
+            }
+        }
+        return changed;
+    }
+
+    private int row(Employee employee) {
+        Integer row = rows.get(employee);
+        if (row == null) {
+            throw new IllegalArgumentException("Employee is not in the payroll: " + employee);
+        }
+        return row;
+    }
+
+    private long sum(int from, int to) {
+        if (to - from < PARALLEL_THRESHOLD) {
+            long sum = 0;
+            for (int row = from; row < to; row++) {
+                sum += salaries[row];
+            }
+            return sum;
+        }
+        return Arrays.stream(salaries, from, to).parallel().sum();
+    }
+
+    private static void checkBasisPoints(int basisPoints) {
+        if (basisPoints < -10_000 || basisPoints > MAX_BASIS_POINTS) {
+            throw new IllegalArgumentException("basisPoints: " + basisPoints);
+        }
+    }
+
+    /**
+     * Зарплата, повышенная на <code>basisPoints</code> сотых процента, с округлением половины копейки от нуля.
+     *
+     * @throws ArithmeticException при переполнении <code>long</code> (после многих повышений без записи)
+     */
+    private static long raised(long salary, int basisPoints) {
+        long product = Math.multiplyExact(salary, basisPoints);
+        // модуль Long.MIN_VALUE и округление у самой границы long тоже переполняются
+        long increase = Math.addExact(product < 0 ? Math.negateExact(product) : product, 5_000) / 10_000;
+        return product < 0 ? Math.subtractExact(salary, increase) : Math.addExact(salary, increase);
+    }
+}
@@ -0,0 +1,444 @@
+package ru.skillbench.tasks.javaapi.collections;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Компактное хранилище леса (множества деревьев) в массивах.<br/>
+ * Узел - это номер <code>id</code>; связи хранятся в столбцах <code>int</code>: родитель, первый и последний ребенок,
+ * следующий брат (-1 - нет узла), данные - в столбце <code>Object[]</code>, признак "развернутости" - в {@link BitSet}.
+ * Это 20 байт на узел (при сжатых ссылках, без учета запаса емкости массивов) против {@link TreeNodeImpl}, где у каждого узла есть заголовок
+ * объекта, поля и, у внутренних узлов, {@link java.util.ArrayList} с массивом (см. {@link #getBytesPerNode()}
+ * и {@link #estimateBytesPerNode(TreeNode)}).<br/>
+ * Для работы через интерфейс {@link TreeNode} {@link #node(int)} возвращает легковесное представление узла ({@link Node}):
+ * объект с парой (лес, id), который создается по требованию и не хранится в лесу.<br/>
+ * Узлы не удаляются: {@link TreeNode#removeChild(TreeNode)} делает узел корнем отдельного дерева.<br/>
+ * Экземпляр не потокобезопасен.
+ */
+public class CompactForest {
+    private static final int NONE = -1;
+    /**
+     * Размер ссылки при сжатых указателях (-XX:+UseCompressedOops, куча меньше 32 Гб)
+     */
+    private static final int REFERENCE_BYTES = 4;
+    private static final int OBJECT_HEADER_BYTES = 12;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private int[] parent;
+    private int[] firstChild;
+    private int[] lastChild;
+    private int[] nextSibling;
+    private Object[] data;
+    private final BitSet expanded = new BitSet();
+    private int size;
+
+    public CompactForest() {
+        this(16);
+    }
+
+    /**
+     * @param capacity Ожидаемое число узлов
+     */
+    public CompactForest(int capacity) {
+        capacity = Math.max(capacity, 1);
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        lastChild = new int[capacity];
+        nextSibling = new int[capacity];
+        data = new Object[capacity];
+    }
+
+    /**
+     * Копирует дерево с корнем <code>root</code> в новый лес; номера узлов идут в порядке прямого обхода, корень - 0.
+     * Признак "развернутости" копируется.
+     */
+    public static CompactForest copyOf(TreeNode root) {
+        CompactForest forest = new CompactForest();
+        // стек предков текущего узла прямого обхода: исходные узлы и их номера в лесу
+        TreeNode[] ancestors = new TreeNode[16];
+        int[] ids = new int[16];
+        int depth = 0;
+        for (Iterator<TreeNode> it = TreeTraversal.preOrder(root); it.hasNext(); ) {
+            TreeNode node = it.next();
+            int parentId = NONE;
+            if (node != root) {
+                while (!ancestors[depth - 1].equals(node.getParent())) {
+                    depth--;
+                }
+                parentId = ids[depth - 1];
+            }
+            int id = forest.add(parentId, node.getData());
+            if (node.isExpanded()) {
+                forest.expanded.set(id);
+            }
+            if (depth == ids.length) {
+                ancestors = Arrays.copyOf(ancestors, depth * 2);
+                ids = Arrays.copyOf(ids, depth * 2);
+            }
+            ancestors[depth] = node;
+            ids[depth++] = id;
+        }
+        return forest;
+    }
+
+    /**
+     * @return Число узлов
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Добавляет узел последним ребенком узла <code>parentId</code> или, если <code>parentId == -1</code>, новым корнем.
+     *
+     * @return Номер нового узла
+     * @throws IndexOutOfBoundsException если узла <code>parentId</code> нет
+     */
+    public int add(int parentId, Object data) {
+        if (parentId != NONE) {
+            checkId(parentId);
+        }
+        if (size == parent.length) {
+            int capacity = size + (size >> 1) + 1;
+            parent = Arrays.copyOf(parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            lastChild = Arrays.copyOf(lastChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            this.data = Arrays.copyOf(this.data, capacity);
+        }
+        int id = size++;
+        parent[id] = NONE;
+        firstChild[id] = NONE;
+        lastChild[id] = NONE;
+        nextSibling[id] = NONE;
+        this.data[id] = data;
+        if (parentId != NONE) {
+            link(parentId, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return Представление узла <code>id</code> как {@link TreeNode}
+     * @throws IndexOutOfBoundsException если узла нет
+     */
+    public Node node(int id) {
+        checkId(id);
+        return new Node(id);
+    }
+
+    /**
+     * @return Оценка памяти на узел в байтах: столбцы с учетом их емкости и {@link BitSet}
+     */
+    public double getBytesPerNode() {
+        if (size == 0) {
+            return 0;
+        }
+        long bytes = 4L * (ARRAY_HEADER_BYTES + 4L * parent.length)
+                + ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * data.length
+                + expanded.size() / 8;
+        return (double) bytes / size;
+    }
+
+    /**
+     * Оценивает память на узел у дерева {@link TreeNodeImpl} с корнем <code>root</code> (без объектов данных,
+     * при сжатых ссылках): объект узла, а у внутренних узлов - {@link java.util.ArrayList} и его массив.
+     */
+    public static double estimateBytesPerNode(TreeNode root) {
+        long nodes = 0;
+        long bytes = 0;
+        for (Iterator<TreeNode> it = TreeTraversal.preOrder(root); it.hasNext(); ) {
+            TreeNode node = it.next();
+            nodes++;
+            // заголовок + parent, children, data, index + isExpanded, underIndex
+            bytes += align(OBJECT_HEADER_BYTES + 4 * REFERENCE_BYTES + 2);
+            int children = node.getChildCount();
+            if (children > 0) {
+                // ArrayList: заголовок + modCount, size, elementData; массив не короче 10 элементов
+                bytes += align(OBJECT_HEADER_BYTES + 8 + REFERENCE_BYTES);
+                bytes += align(ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * Math.max(children, 10));
+            }
+        }
+        return (double) bytes / nodes;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("id: " + id);
+        }
+    }
+
+    private void link(int parentId, int id) {
+        parent[id] = parentId;
+        if (lastChild[parentId] == NONE) {
+            firstChild[parentId] = id;
+        } else {
+            nextSibling[lastChild[parentId]] = id;
+        }
+        lastChild[parentId] = id;
+    }
+
+    private void unlink(int id) {
+        int parentId = parent[id];
+        if (parentId == NONE) {
+            return;
+        }
+        int previous = NONE;
+        for (int child = firstChild[parentId]; child != id; child = nextSibling[child]) {
+            previous = child;
+        }
+        if (previous == NONE) {
+            firstChild[parentId] = nextSibling[id];
+        } else {
+            nextSibling[previous] = nextSibling[id];
+        }
+        if (lastChild[parentId] == id) {
+            lastChild[parentId] = previous;
+        }
+        nextSibling[id] = NONE;
+        parent[id] = NONE;
+    }
+
+    /**
+     * Следующий узел поддерева <code>root</code> в прямом обходе (без стека, по связям) или -1
+     */
+    private int nextInPreOrder(int id, int root) {
+        if (firstChild[id] != NONE) {
+            return firstChild[id];
+        }
+        while (id != root && nextSibling[id] == NONE) {
+            id = parent[id];
+        }
+        return id == root ? NONE : nextSibling[id];
+    }
+
+    private static boolean equal(Object data, Object nodeData) {
+        return data == null ? nodeData == null : data.equals(nodeData);
+    }
+
+    /**
+     * Легковесное представление узла леса. Два представления одного узла равны ({@link #equals(Object)}),
+     * поэтому сравнивать их нужно через <code>equals</code>, а не <code>==</code>.
+     */
+    public final class Node implements TreeNode {
+        private final int id;
+
+        private Node(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        private CompactForest getForest() {
+            return CompactForest.this;
+        }
+
+        private int idOf(TreeNode node) {
+            if (!(node instanceof Node) || ((Node) node).getForest() != CompactForest.this) {
+                throw new IllegalArgumentException("Node of another tree: " + node);
+            }
+            return ((Node) node).id;
+        }
+
+        @Override
+        public TreeNode getParent() {
+            return parent[id] == NONE ? null : new Node(parent[id]);
+        }
+
+        /**
+         * Переносит узел последним ребенком узла <code>parent</code> (или делает корнем при <code>null</code>).
+         *
+         * @throws IllegalArgumentException если <code>parent</code> - узел не этого леса
+         */
+        @Override
+        public void setParent(TreeNode parent) {
+            int parentId = parent == null ? NONE : idOf(parent);
+            if (parentId == CompactForest.this.parent[id]) {
+                return;
+            }
+            unlink(id);
+            if (parentId != NONE) {
+                link(parentId, id);
+            }
+        }
+
+        @Override
+        public TreeNode getRoot() {
+            if (parent[id] == NONE) {
+                return null;
+            }
+            int root = id;
+            while (parent[root] != NONE) {
+                root = parent[root];
+            }
+            return new Node(root);
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return firstChild[id] == NONE;
+        }
+
+        @Override
+        public int getChildCount() {
+            int count = 0;
+            for (int child = firstChild[id]; child != NONE; child = nextSibling[child]) {
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public Iterator<TreeNode> getChildrenIterator() {
+            return new Iterator<TreeNode>() {
+                private int next = firstChild[id];
+
+                @Override
+                public boolean hasNext() {
+                    return next != NONE;
+                }
+
+                @Override
+                public TreeNode next() {
+                    if (next == NONE) {
+                        throw new NoSuchElementException();
+                    }
+                    Node result = new Node(next);
+                    next = nextSibling[next];
+                    return result;
+                }
+            };
+        }
+
+        /**
+         * @throws IllegalArgumentException если <code>child</code> - узел не этого леса
+         */
+        @Override
+        public void addChild(TreeNode child) {
+            child.setParent(this);
+        }
+
+        @Override
+        public boolean removeChild(TreeNode child) {
+            if (!(child instanceof Node) || ((Node) child).getForest() != CompactForest.this
+                    || parent[((Node) child).id] != id) {
+                return false;
+            }
+            unlink(((Node) child).id);
+            return true;
+        }
+
+        @Override
+        public boolean isExpanded() {
+            return expanded.get(id);
+        }
+
+        @Override
+        public void setExpanded(boolean expanded) {
+            for (int node = id; node != NONE; node = nextInPreOrder(node, id)) {
+                CompactForest.this.expanded.set(node, expanded);
+            }
+        }
+
+        @Override
+        public Object getData() {
+            return data[id];
+        }
+
+        @Override
+        public void setData(Object data) {
+            CompactForest.this.data[id] = data;
+        }
+
+        @Override
+        public String getTreePath() {
+            int depth = 0;
+            for (int node = id; node != NONE; node = parent[node]) {
+                depth++;
+            }
+            int[] path = new int[depth];
+            int node = id;
+            for (int i = depth - 1; i >= 0; i--) {
+                path[i] = node;
+                node = parent[node];
+            }
+            StringBuilder result = new StringBuilder(depth * 8);
+            for (int i = 0; i < depth; i++) {
+                if (i > 0) {
+                    result.append("->");
+                }
+                Object nodeData = data[path[i]];
+                result.append(nodeData == null ? "empty" : nodeData.toString());
+            }
+            return result.toString();
+        }
+
+        @Override
+        public TreeNode findParent(Object data) {
+            for (int node = id; node != NONE; node = parent[node]) {
+                if (equal(data, CompactForest.this.data[node])) {
+                    return new Node(node);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Ищет в ширину, как {@link TreeNodeImpl#findChild(Object)}; очередь - массив номеров узлов
+         */
+        @Override
+        public TreeNode findChild(Object data) {
+            int[] queue = new int[16];
+            int head = 0;
+            int tail = 0;
+            for (int child = firstChild[id]; child != NONE; child = nextSibling[child]) {
+                if (tail == queue.length) {
+                    queue = Arrays.copyOf(queue, tail * 2);
+                }
+                queue[tail++] = child;
+            }
+            while (head < tail) {
+                int node = queue[head++];
+                if (equal(data, CompactForest.this.data[node])) {
+                    return new Node(node);
+                }
+                if (head > queue.length / 2) {
+                    // сдвигаем очередь в начало, чтобы массив рос только по ширине дерева
+                    System.arraycopy(queue, head, queue, 0, tail - head);
+                    tail -= head;
+                    head = 0;
+                }
+                for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, tail * 2);
+                    }
+                    queue[tail++] = child;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Node && ((Node) o).getForest() == CompactForest.this && ((Node) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return "Node{id=" + id + ", data=" + data[id] + "}";
+        }
+    }
+}
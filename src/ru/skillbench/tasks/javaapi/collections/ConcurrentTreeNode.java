@@ -0,0 +1,369 @@
+package ru.skillbench.tasks.javaapi.collections;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Потокобезопасный узел дерева.<br/>
+ * Дети хранятся в массиве, который при каждом изменении копируется (copy-on-write), поэтому
+ * {@link #getChildrenIterator()} обходит снимок детей на момент вызова (слабо согласованный итератор,
+ * не бросает {@link java.util.ConcurrentModificationException}), а {@link #getChildCount()} и {@link #isLeaf()}
+ * читают одно volatile-поле.<br/>
+ * Изменения структуры ({@link #addChild(TreeNode)}, {@link #removeChild(TreeNode)}) выполняются под блокировкой
+ * записи дерева, в котором находится узел (при переносе - обоих деревьев): перенос узла от одного родителя к другому
+ * (<code>addChild</code> узла, у которого уже есть родитель) удаляет его из старого родителя, добавляет в новый и меняет
+ * ссылку на родителя за одну операцию. Блокировка дерева - одна из {@link #LOCK_STRIPES} блокировок {@link StampedLock},
+ * выбранная по корню дерева, поэтому изменения разных деревьев почти никогда не мешают друг другу.<br/>
+ * Читатели блокировок не берут: методы, проходящие по цепочке родителей ({@link #getRoot()}, {@link #getTreePath()},
+ * {@link #findParent(Object)}), проверяют оптимистичную метку блокировки своего дерева и повторяют чтение, только если
+ * во время него изменилось это дерево, - поэтому их результат соответствует дереву в какой-то один момент.
+ * {@link #findChild(Object)} и {@link #setExpanded(boolean)} обходят поддерево по снимкам детей каждого узла и
+ * слабо согласованы: узел, перенесенный во время обхода, может быть пропущен или пройден дважды.<br/>
+ * Атомарность переноса гарантируется, когда оба родителя - <code>ConcurrentTreeNode</code>.
+ */
+public class ConcurrentTreeNode implements TreeNode {
+    private static final TreeNode[] NO_CHILDREN = new TreeNode[0];
+    /**
+     * Через сколько шагов по цепочке родителей проверяется метка (цепочка, прочитанная во время изменений, может зациклиться)
+     */
+    private static final int VALIDATE_STEPS = 1024;
+    /**
+     * Число блокировок деревьев (степень двойки)
+     */
+    private static final int LOCK_STRIPES = 64;
+    private static final StampedLock[] LOCKS = new StampedLock[LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            LOCKS[i] = new StampedLock();
+        }
+    }
+
+    private volatile TreeNode parent;
+    private volatile TreeNode[] children = NO_CHILDREN;
+    private volatile boolean expanded;
+    private volatile Object data;
+    /**
+     * Блокировка дерева, найденная последним чтением цепочки от этого узла: с нее начинается следующее чтение
+     */
+    private volatile StampedLock treeLockHint;
+
+    public ConcurrentTreeNode() {
+    }
+
+    public ConcurrentTreeNode(Object data) {
+        this.data = data;
+    }
+
+    @Override
+    public TreeNode getParent() {
+        return parent;
+    }
+
+    /**
+     * Задает родительский объект <code>TreeNode</code>, не меняя списки детей.
+     * Обычно вызывается в методах {@link #addChild(TreeNode)} и {@link #removeChild(TreeNode)} родительского объекта.
+     */
+    @Override
+    public void setParent(TreeNode parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public TreeNode getRoot() {
+        if (parent == null) {
+            return null;
+        }
+        ArrayList<TreeNode> path = new ArrayList<>();
+        readChain(this, path);
+        TreeNode root = path.get(path.size() - 1);
+        return root == this ? null : root;
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return children.length == 0;
+    }
+
+    @Override
+    public int getChildCount() {
+        return children.length;
+    }
+
+    /**
+     * Возвращает итератор по снимку детей на момент вызова; {@link Iterator#remove()} не поддерживается.
+     */
+    @Override
+    public Iterator<TreeNode> getChildrenIterator() {
+        return Arrays.asList(children).iterator();
+    }
+
+    /**
+     * Добавляет узел последним ребенком и задает ему в качестве родителя <code>this</code>.
+     * Если у узла уже есть родитель, узел атомарно переносится: удаляется из детей старого родителя.
+     *
+     * @throws NullPointerException     если <code>child == null</code>
+     * @throws IllegalArgumentException если <code>child</code> - это сам узел или его предок
+     */
+    @Override
+    public void addChild(TreeNode child) {
+        if (child == null) {
+            throw new NullPointerException("child");
+        }
+        ArrayList<TreeNode> path = new ArrayList<>();
+        StampedLock lock;
+        long stamp;
+        StampedLock childLock;
+        long childStamp;
+        for (int attempt = 0; ; attempt++) {
+            if (attempt > 0) {
+                Thread.yield();
+            }
+            long targetStamp = readChain(this, path);
+            for (TreeNode node : path) {
+                if (node == child) {
+                    throw new IllegalArgumentException("Cannot add an ancestor as a child: " + child);
+                }
+            }
+            lock = lockOf(path.get(path.size() - 1));
+            long childTreeStamp = readChain(child, path);
+            childLock = lockOf(path.get(path.size() - 1));
+            // метки превращаются в блокировки записи без ожидания, только если оба дерева не менялись после чтения цепочек
+            if (lock == childLock) {
+                stamp = lock.validate(targetStamp) ? lock.tryConvertToWriteLock(childTreeStamp) : 0;
+                childStamp = 0;
+                if (stamp != 0) {
+                    break;
+                }
+            } else {
+                stamp = lock.tryConvertToWriteLock(targetStamp);
+                if (stamp == 0) {
+                    continue;
+                }
+                childStamp = childLock.tryConvertToWriteLock(childTreeStamp);
+                if (childStamp != 0) {
+                    break;
+                }
+                lock.unlockWrite(stamp);
+            }
+        }
+        try {
+            TreeNode oldParent = child.getParent();
+            if (oldParent instanceof ConcurrentTreeNode) {
+                ((ConcurrentTreeNode) oldParent).removeIdentical(child);
+            } else if (oldParent != null) {
+                oldParent.removeChild(child);
+            }
+            TreeNode[] current = children;
+            TreeNode[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = child;
+            children = updated;
+            child.setParent(this);
+        } finally {
+            if (childStamp != 0) {
+                childLock.unlockWrite(childStamp);
+            }
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean removeChild(TreeNode child) {
+        if (child == null) {
+            return false;
+        }
+        ArrayList<TreeNode> path = new ArrayList<>();
+        StampedLock lock;
+        long stamp;
+        for (int attempt = 0; ; attempt++) {
+            if (attempt > 0) {
+                Thread.yield();
+            }
+            long treeStamp = readChain(this, path);
+            lock = lockOf(path.get(path.size() - 1));
+            stamp = lock.tryConvertToWriteLock(treeStamp);
+            if (stamp != 0) {
+                break;
+            }
+        }
+        try {
+            TreeNode[] current = children;
+            for (int i = 0; i < current.length; i++) {
+                if (child.equals(current[i])) {
+                    TreeNode removed = current[i];
+                    children = without(current, i);
+                    removed.setParent(null);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Удаляет именно этот объект из детей (вызывается под блокировкой записи)
+     */
+    private void removeIdentical(TreeNode child) {
+        TreeNode[] current = children;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == child) {
+                children = without(current, i);
+                return;
+            }
+        }
+    }
+
+    private static TreeNode[] without(TreeNode[] array, int index) {
+        if (array.length == 1) {
+            return NO_CHILDREN;
+        }
+        TreeNode[] result = new TreeNode[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+
+    @Override
+    public boolean isExpanded() {
+        return expanded;
+    }
+
+    @Override
+    public void setExpanded(boolean expanded) {
+        this.expanded = expanded;
+        ArrayDeque<TreeNode> stack = new ArrayDeque<>();
+        for (TreeNode child : children) {
+            stack.push(child);
+        }
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            if (node instanceof ConcurrentTreeNode) {
+                ConcurrentTreeNode current = (ConcurrentTreeNode) node;
+                current.expanded = expanded;
+                for (TreeNode child : current.children) {
+                    stack.push(child);
+                }
+            } else {
+                node.setExpanded(expanded);
+            }
+        }
+    }
+
+    @Override
+    public Object getData() {
+        return data;
+    }
+
+    @Override
+    public void setData(Object data) {
+        this.data = data;
+    }
+
+    @Override
+    public String getTreePath() {
+        ArrayList<TreeNode> path = new ArrayList<>();
+        readChain(this, path);
+        StringBuilder result = new StringBuilder(path.size() * 8);
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Object nodeData = path.get(i).getData();
+            result.append(nodeData == null ? "empty" : nodeData.toString());
+            if (i > 0) {
+                result.append("->");
+            }
+        }
+        return result.toString();
+    }
+
+    @Override
+    public TreeNode findParent(Object data) {
+        ArrayList<TreeNode> path = new ArrayList<>();
+        readChain(this, path);
+        for (TreeNode node : path) {
+            Object nodeData = node.getData();
+            if (data == null ? nodeData == null : data.equals(nodeData)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ищет в ширину, как {@link TreeNodeImpl#findChild(Object)}, по снимкам детей каждого узла
+     */
+    @Override
+    public TreeNode findChild(Object data) {
+        Iterator<TreeNode> it = TreeTraversal.breadthFirst(this);
+        it.next();
+        while (it.hasNext()) {
+            TreeNode node = it.next();
+            Object nodeData = node.getData();
+            if (data == null ? nodeData == null : data.equals(nodeData)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Блокировка дерева с корнем <code>root</code>
+     */
+    private static StampedLock lockOf(TreeNode root) {
+        int hash = System.identityHashCode(root);
+        return LOCKS[(hash ^ hash >>> 16) & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Читает в <code>path</code> цепочку от <code>start</code> до корня его дерева (корень - последний элемент) так,
+     * что она соответствует дереву в какой-то один момент.<br/>
+     * Любое изменение дерева с корнем r выполняется под блокировкой записи {@link #lockOf(TreeNode) lockOf(r)}, поэтому
+     * цепочка, которая заканчивается в r и прочитана без изменений этой блокировки, целиком взята из дерева r.
+     * Корень заранее неизвестен, поэтому первая попытка проверяет метку блокировки, найденной прошлым чтением от этого
+     * узла; если у найденного корня блокировка другая, следующая попытка проверяет ее.
+     *
+     * @return Оптимистичная метка блокировки корня, действительная для прочитанной цепочки
+     */
+    private static long readChain(TreeNode start, ArrayList<TreeNode> path) {
+        StampedLock hint = start instanceof ConcurrentTreeNode ? ((ConcurrentTreeNode) start).treeLockHint : null;
+        StampedLock lock = hint == null ? lockOf(start) : hint;
+        for (int attempt = 0; ; attempt++) {
+            long stamp = optimisticRead(lock, attempt);
+            path.clear();
+            boolean valid = true;
+            for (TreeNode node = start; node != null; node = node.getParent()) {
+                path.add(node);
+                if (path.size() % VALIDATE_STEPS == 0 && !lock.validate(stamp)) {
+                    valid = false;
+                    break;
+                }
+            }
+            StampedLock rootLock = lockOf(path.get(path.size() - 1));
+            if (valid && rootLock == lock && lock.validate(stamp)) {
+                if (start instanceof ConcurrentTreeNode && hint != lock) {
+                    ((ConcurrentTreeNode) start).treeLockHint = lock;
+                }
+                return stamp;
+            }
+            lock = rootLock;
+        }
+    }
+
+    /**
+     * @param attempt Номер попытки чтения; при повторных попытках поток сначала уступает процессор писателю
+     * @return Оптимистичная метка; если идет запись, ждет ее окончания, не блокируя писателя
+     */
+    private static long optimisticRead(StampedLock lock, int attempt) {
+        if (attempt > 0) {
+            Thread.yield();
+        }
+        long stamp;
+        while ((stamp = lock.tryOptimisticRead()) == 0) {
+            Thread.yield();
+        }
+        return stamp;
+    }
+}
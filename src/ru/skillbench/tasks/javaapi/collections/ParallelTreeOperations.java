@@ -0,0 +1,168 @@
+package ru.skillbench.tasks.javaapi.collections;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Параллельные операции над поддеревом {@link TreeNode} в {@link ForkJoinPool}.<br/>
+ * Задача обрабатывает узел, отдает в пул поддеревья всех его детей, кроме последнего, а последнего обрабатывает
+ * сама в цикле. Задачи не ждут друг друга ({@link CountedCompleter}), поэтому глубина стека не зависит
+ * от глубины дерева. Когда в очереди потока и так достаточно задач, поддерево обходится последовательно,
+ * без создания новых задач.<br/>
+ * Во время операции дерево нельзя изменять.
+ */
+public final class ParallelTreeOperations {
+    /**
+     * Сколько лишних задач в очереди потока допускается, прежде чем поддерево обходится последовательно
+     */
+    private static final int SURPLUS_THRESHOLD = 3;
+
+    private ParallelTreeOperations() {
+    }
+
+    /**
+     * Вызывает <code>action</code> для каждого узла поддерева <code>root</code> (включая его самого)
+     * в {@link ForkJoinPool#commonPool()}; <code>action</code> вызывается из разных потоков в произвольном порядке.
+     */
+    public static void forEachNode(TreeNode root, Consumer<? super TreeNode> action) {
+        forEachNode(ForkJoinPool.commonPool(), root, action);
+    }
+
+    public static void forEachNode(ForkJoinPool pool, TreeNode root, Consumer<? super TreeNode> action) {
+        pool.invoke(new NodeTask(null, root, node -> {
+            action.accept(node);
+            return true;
+        }, null));
+    }
+
+    /**
+     * Параллельный аналог {@link TreeNode#setExpanded(boolean)}: задает признак всем узлам поддерева.
+     * Узлы других реализаций {@link TreeNode} разворачивают свое поддерево сами.
+     */
+    public static void setExpanded(TreeNode root, boolean expanded) {
+        setExpanded(ForkJoinPool.commonPool(), root, expanded);
+    }
+
+    public static void setExpanded(ForkJoinPool pool, TreeNode root, boolean expanded) {
+        pool.invoke(new NodeTask(null, root, node -> {
+            if (node instanceof TreeNodeImpl) {
+                ((TreeNodeImpl) node).isExpanded = expanded;
+                return true;
+            }
+            node.setExpanded(expanded);
+            return false;
+        }, null));
+    }
+
+    /**
+     * Находит какой-нибудь узел поддерева <code>root</code> (включая его самого), удовлетворяющий условию.
+     * Как только узел найден, остальные задачи прекращают обход.
+     *
+     * @return Найденный узел или <code>null</code>
+     */
+    public static TreeNode findAny(TreeNode root, Predicate<? super TreeNode> condition) {
+        return findAny(ForkJoinPool.commonPool(), root, condition);
+    }
+
+    public static TreeNode findAny(ForkJoinPool pool, TreeNode root, Predicate<? super TreeNode> condition) {
+        AtomicReference<TreeNode> found = new AtomicReference<>();
+        pool.invoke(new NodeTask(null, root, node -> {
+            if (condition.test(node)) {
+                found.compareAndSet(null, node);
+            }
+            return true;
+        }, found));
+        return found.get();
+    }
+
+    /**
+     * Обработчик узла
+     */
+    private interface Visitor {
+        /**
+         * @return <code>true</code>, если нужно обойти и поддеревья детей узла
+         */
+        boolean visit(TreeNode node);
+    }
+
+    private static final class NodeTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final TreeNode node;
+        private final Visitor visitor;
+        /**
+         * Результат поиска; обход прекращается, как только он задан. <code>null</code>, если это не поиск
+         */
+        private final AtomicReference<TreeNode> found;
+
+        NodeTask(CountedCompleter<?> completer, TreeNode node, Visitor visitor, AtomicReference<TreeNode> found) {
+            super(completer);
+            this.node = node;
+            this.visitor = visitor;
+            this.found = found;
+        }
+
+        private boolean isFound() {
+            return found != null && found.get() != null;
+        }
+
+        @Override
+        public void compute() {
+            TreeNode current = node;
+            while (current != null && !isFound()) {
+                if (getSurplusQueuedTaskCount() > SURPLUS_THRESHOLD) {
+                    visitSequentially(current);
+                    break;
+                }
+                if (!visitor.visit(current) || isFound()) {
+                    break;
+                }
+                Iterator<TreeNode> children = current.getChildrenIterator();
+                TreeNode next = children.hasNext() ? children.next() : null;
+                while (children.hasNext()) {
+                    addToPendingCount(1);
+                    new NodeTask(this, next, visitor, found).fork();
+                    next = children.next();
+                }
+                current = next;
+            }
+            if (isFound()) {
+                quietlyCompleteRoot();
+            } else {
+                tryComplete();
+            }
+        }
+
+        private void visitSequentially(TreeNode start) {
+            ArrayDeque<Iterator<TreeNode>> stack = new ArrayDeque<>();
+            TreeNode current = start;
+            while (true) {
+                if (visitor.visit(current)) {
+                    if (isFound()) {
+                        return;
+                    }
+                    if (!current.isLeaf()) {
+                        stack.push(current.getChildrenIterator());
+                    }
+                }
+                current = null;
+                while (!stack.isEmpty()) {
+                    Iterator<TreeNode> children = stack.peek();
+                    if (children.hasNext()) {
+                        current = children.next();
+                        break;
+                    }
+                    stack.pop();
+                }
+                if (current == null) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package ru.skillbench.tasks.javaapi.collections;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Индекс "предок - потомок" для неизменяемого (замороженного) дерева {@link TreeNode}.<br/>
+ * При построении узлы нумеруются в порядке прямого обхода (номер = левая метка вложенных множеств),
+ * для каждого узла запоминаются номер в обратном обходе (правая метка), глубина и таблица
+ * двоичных подъемов (binary lifting): предок на 1, 2, 4, ... уровней выше.<br/>
+ * Поэтому проверка {@link #isAncestor(TreeNode, TreeNode)} и глубина узла - O(1) (после поиска узла в хеш-таблице),
+ * а {@link #lowestCommonAncestor(TreeNode, TreeNode)} и {@link #getAncestor(TreeNode, int)} - O(log n).<br/>
+ * Индекс отражает дерево на момент построения; после изменения дерева его нужно построить заново.
+ * Построение нерекурсивно. Экземпляр неизменяем и потокобезопасен.
+ */
+public final class TreeAncestry {
+    private final TreeNode[] nodes;
+    private final HashMap<TreeNode, Integer> ids;
+    private final int[] post;
+    private final int[] depth;
+    /**
+     * <code>up[k][v]</code> - предок узла <code>v</code> на 2<sup>k</sup> уровней выше или -1
+     */
+    private final int[][] up;
+
+    /**
+     * Строит индекс поддерева <code>root</code>
+     */
+    public TreeAncestry(TreeNode root) {
+        TreeNode[] nodes = new TreeNode[16];
+        int[] parent = new int[16];
+        int[] depth = new int[16];
+        int[] post = new int[16];
+        HashMap<TreeNode, Integer> ids = new HashMap<>();
+        int size = 0;
+        int postCount = 0;
+
+        // путь от корня до текущего узла: номера узлов и итераторы их детей
+        int[] path = new int[16];
+        ArrayDeque<Iterator<TreeNode>> children = new ArrayDeque<>();
+        TreeNode next = root;
+        int pathLength = 0;
+        while (true) {
+            if (next != null) {
+                if (size == nodes.length) {
+                    int capacity = size * 2;
+                    nodes = Arrays.copyOf(nodes, capacity);
+                    parent = Arrays.copyOf(parent, capacity);
+                    depth = Arrays.copyOf(depth, capacity);
+                    post = Arrays.copyOf(post, capacity);
+                }
+                int id = size++;
+                nodes[id] = next;
+                parent[id] = pathLength == 0 ? -1 : path[pathLength - 1];
+                depth[id] = pathLength;
+                ids.put(next, id);
+                if (pathLength == path.length) {
+                    path = Arrays.copyOf(path, pathLength * 2);
+                }
+                path[pathLength++] = id;
+                children.push(next.getChildrenIterator());
+            }
+            Iterator<TreeNode> it = children.peek();
+            if (it.hasNext()) {
+                next = it.next();
+            } else {
+                children.pop();
+                post[path[--pathLength]] = postCount++;
+                if (pathLength == 0) {
+                    break;
+                }
+                next = null;
+            }
+        }
+
+        int maxDepth = 0;
+        for (int i = 0; i < size; i++) {
+            maxDepth = Math.max(maxDepth, depth[i]);
+        }
+        int levels = 1;
+        while ((1 << levels) <= maxDepth) {
+            levels++;
+        }
+        int[][] up = new int[levels][];
+        up[0] = Arrays.copyOf(parent, size);
+        for (int k = 1; k < levels; k++) {
+            int[] previous = up[k - 1];
+            int[] current = new int[size];
+            for (int v = 0; v < size; v++) {
+                current[v] = previous[v] < 0 ? -1 : previous[previous[v]];
+            }
+            up[k] = current;
+        }
+
+        this.nodes = Arrays.copyOf(nodes, size);
+        this.ids = ids;
+        this.post = Arrays.copyOf(post, size);
+        this.depth = Arrays.copyOf(depth, size);
+        this.up = up;
+    }
+
+    /**
+     * @return Число узлов в индексе
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * @return <code>true</code>, если узел есть в индексе
+     */
+    public boolean contains(TreeNode node) {
+        return ids.containsKey(node);
+    }
+
+    private int idOf(TreeNode node) {
+        Integer id = ids.get(node);
+        if (id == null) {
+            throw new IllegalArgumentException("Node is not indexed: " + node);
+        }
+        return id;
+    }
+
+    /**
+     * @return Номер узла в прямом обходе (левая метка); у корня 0
+     * @throws IllegalArgumentException если узла нет в индексе
+     */
+    public int getPreOrderNumber(TreeNode node) {
+        return idOf(node);
+    }
+
+    /**
+     * @return Номер узла в обратном обходе (правая метка); у корня <code>size() - 1</code>
+     * @throws IllegalArgumentException если узла нет в индексе
+     */
+    public int getPostOrderNumber(TreeNode node) {
+        return post[idOf(node)];
+    }
+
+    /**
+     * @return Глубина узла; у корня 0
+     * @throws IllegalArgumentException если узла нет в индексе
+     */
+    public int getDepth(TreeNode node) {
+        return depth[idOf(node)];
+    }
+
+    /**
+     * По тому же соглашению, что и {@link TreeNode#findParent(Object)}, узел считается предком самого себя.
+     *
+     * @return <code>true</code>, если <code>ancestor</code> - предок <code>node</code> или сам <code>node</code>
+     * @throws IllegalArgumentException если узла нет в индексе
+     */
+    public boolean isAncestor(TreeNode ancestor, TreeNode node) {
+        int a = idOf(ancestor);
+        int v = idOf(node);
+        return a <= v && post[v] <= post[a];
+    }
+
+    /**
+     * @return Предок узла на <code>levels</code> уровней выше (при 0 - сам узел) или <code>null</code>, если его нет
+     * @throws IllegalArgumentException если узла нет в индексе или <code>levels &lt; 0</code>
+     */
+    public TreeNode getAncestor(TreeNode node, int levels) {
+        if (levels < 0) {
+            throw new IllegalArgumentException("levels: " + levels);
+        }
+        int v = idOf(node);
+        if (levels > depth[v]) {
+            return null;
+        }
+        return nodes[lift(v, levels)];
+    }
+
+    /**
+     * @return Наименьший общий предок двух узлов (узел может быть предком самого себя)
+     * @throws IllegalArgumentException если узла нет в индексе
+     */
+    public TreeNode lowestCommonAncestor(TreeNode first, TreeNode second) {
+        int a = idOf(first);
+        int b = idOf(second);
+        if (depth[a] < depth[b]) {
+            b = lift(b, depth[b] - depth[a]);
+        } else {
+            a = lift(a, depth[a] - depth[b]);
+        }
+        if (a == b) {
+            return nodes[a];
+        }
+        for (int k = up.length - 1; k >= 0; k--) {
+            if (up[k][a] != up[k][b]) {
+                a = up[k][a];
+                b = up[k][b];
+            }
+        }
+        return nodes[up[0][a]];
+    }
+
+    /**
+     * @return Расстояние между узлами в ребрах
+     * @throws IllegalArgumentException если узла нет в индексе
+     */
+    public int getDistance(TreeNode first, TreeNode second) {
+        TreeNode common = lowestCommonAncestor(first, second);
+        return getDepth(first) + getDepth(second) - 2 * getDepth(common);
+    }
+
+    /**
+     * Предок узла <code>v</code> на <code>levels</code> уровней выше (<code>levels</code> не больше глубины)
+     */
+    private int lift(int v, int levels) {
+        for (int k = 0; levels != 0; k++, levels >>>= 1) {
+            if ((levels & 1) != 0) {
+                v = up[k][v];
+            }
+        }
+        return v;
+    }
+}
@@ -1,28 +1,47 @@
 package ru.skillbench.tasks.javaapi.collections;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
 import java.util.Set;
 
+/**
+ * Узел дерева.<br/>
+ * Дочерние узлы хранятся в {@link ArrayList}, который создается при добавлении первого дочернего узла.<br/>
+ * Узел можно проиндексировать ({@link #setIndexed(boolean)}): тогда он хранит таблицу "data -> узлы" для всего
+ * своего поддерева, и {@link #findChild(Object)} находит узел за O(1) в среднем вместо обхода поддерева.
+ * Индекс поддерживается в {@link #addChild(TreeNode)}, {@link #removeChild(TreeNode)} и {@link #setData(Object)}
+ * узлов <code>TreeNodeImpl</code> поддерева; изменения в узлах других реализаций {@link TreeNode}
+ * после их добавления в дерево индекс не отслеживает.<br/>
+ * Все методы, проходящие по дереву, нерекурсивны (см. также {@link TreeTraversal}) и работают на деревьях любой глубины.
+ */
 public class TreeNodeImpl implements TreeNode {
     private TreeNode parent;
-    private final LinkedList<TreeNode> children;
+    private ArrayList<TreeNode> children;
     boolean isExpanded;
     private Object data;
+    /**
+     * Индекс поддерева этого узла или <code>null</code>
+     */
+    private DataIndex index;
+    /**
+     * Есть ли индекс у этого узла или у одного из его предков (только тогда изменения нужно отражать в индексах)
+     */
+    private boolean underIndex;
 
     public TreeNodeImpl() {
         data = null;
         parent = null;
         isExpanded = false;
-        children = new LinkedList<>();
     }
 
     public TreeNodeImpl(Object data) {
         this.data = data;
         parent = null;
         isExpanded = false;
-        children = new LinkedList<>();
     }
 
     /**
@@ -54,9 +73,12 @@ public class TreeNodeImpl implements TreeNode {
     public TreeNode getRoot() {
         if (parent == null) {
             return null;
-        } else {
-            return parent.getParent() == null ? parent : parent.getRoot();
         }
+        TreeNode root = parent;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        return root;
     }
 
     /**
@@ -66,7 +88,7 @@ public class TreeNodeImpl implements TreeNode {
      */
     @Override
     public boolean isLeaf() {
-        return children.isEmpty();
+        return children == null || children.isEmpty();
     }
 
     /**
@@ -74,7 +96,7 @@ public class TreeNodeImpl implements TreeNode {
      */
     @Override
     public int getChildCount() {
-        return children.size();
+        return children == null ? 0 : children.size();
     }
 
     /**
@@ -82,7 +104,7 @@ public class TreeNodeImpl implements TreeNode {
      */
     @Override
     public Iterator<TreeNode> getChildrenIterator() {
-        return children.iterator();
+        return children == null ? Collections.<TreeNode>emptyIterator() : children.iterator();
     }
 
     /**
@@ -94,8 +116,22 @@ public class TreeNodeImpl implements TreeNode {
      */
     @Override
     public void addChild(TreeNode child) throws NullPointerException {
+        if (child == null) {
+            throw new NullPointerException("child");
+        }
+        if (children == null) {
+            children = new ArrayList<>();
+        }
         children.add(child);
         child.setParent(this);
+        if (underIndex) {
+            ArrayList<TreeNode> subtree = subtree(child, true);
+            for (TreeNodeImpl owner = this; owner != null; owner = indexedAncestor(owner)) {
+                if (owner.index != null) {
+                    owner.index.addAll(subtree);
+                }
+            }
+        }
     }
 
     /**
@@ -110,13 +146,21 @@ public class TreeNodeImpl implements TreeNode {
      */
     @Override
     public boolean removeChild(TreeNode child) {
-        if (child != null && children.contains(child)) {
-            children.remove(child);
-            child.setParent(null);
-            return true;
-        } else {
+        int position = child == null || children == null ? -1 : children.indexOf(child);
+        if (position < 0) {
             return false;
         }
+        TreeNode removed = children.remove(position);
+        removed.setParent(null);
+        if (underIndex) {
+            ArrayList<TreeNode> subtree = subtree(removed, false);
+            for (TreeNodeImpl owner = this; owner != null; owner = indexedAncestor(owner)) {
+                if (owner.index != null) {
+                    owner.index.removeAll(subtree);
+                }
+            }
+        }
+        return true;
     }
 
     /**
@@ -139,7 +183,29 @@ public class TreeNodeImpl implements TreeNode {
     @Override
     public void setExpanded(boolean expanded) {
         isExpanded = expanded;
-        children.forEach(child -> child.setExpanded(expanded));
+        if (children == null) {
+            return;
+        }
+        ArrayDeque<Iterator<TreeNode>> stack = new ArrayDeque<>();
+        stack.push(children.iterator());
+        while (!stack.isEmpty()) {
+            Iterator<TreeNode> it = stack.peek();
+            if (!it.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            TreeNode child = it.next();
+            if (child instanceof TreeNodeImpl) {
+                TreeNodeImpl impl = (TreeNodeImpl) child;
+                impl.isExpanded = expanded;
+                if (impl.children != null) {
+                    stack.push(impl.children.iterator());
+                }
+            } else {
+                // другая реализация сама разворачивает свое поддерево
+                child.setExpanded(expanded);
+            }
+        }
     }
 
     /**
@@ -158,6 +224,14 @@ public class TreeNodeImpl implements TreeNode {
      */
     @Override
     public void setData(Object data) {
+        if (underIndex) {
+            for (TreeNodeImpl owner = indexedAncestor(this); owner != null; owner = indexedAncestor(owner)) {
+                if (owner.index != null) {
+                    owner.index.remove(this.data, this);
+                    owner.index.add(data, this);
+                }
+            }
+        }
         this.data = data;
     }
 
@@ -170,11 +244,25 @@ public class TreeNodeImpl implements TreeNode {
      */
     @Override
     public String getTreePath() {
-        if (parent == null) {
-            return data == null ? "empty" : data.toString();
-        } else {
-            return parent.getTreePath() + "->" + (data == null ? "empty" : data.toString());
+        int depth = 0;
+        for (TreeNode node = this; node != null; node = node.getParent()) {
+            depth++;
+        }
+        TreeNode[] path = new TreeNode[depth];
+        TreeNode node = this;
+        for (int i = depth - 1; i >= 0; i--) {
+            path[i] = node;
+            node = node.getParent();
+        }
+        StringBuilder result = new StringBuilder(depth * 8);
+        for (int i = 0; i < depth; i++) {
+            if (i > 0) {
+                result.append("->");
+            }
+            Object nodeData = path[i].getData();
+            result.append(nodeData == null ? "empty" : nodeData.toString());
         }
+        return result.toString();
     }
 
     /**
@@ -188,11 +276,13 @@ public class TreeNodeImpl implements TreeNode {
      */
     @Override
     public TreeNode findParent(Object data) {
-        if (data == null) {
-            return this.data == null ? this : (parent == null ? null : parent.findParent(null));
-        } else {
-            return this.data.equals(data) ? this : (parent == null ? null : parent.findParent(data));
+        for (TreeNode node = this; node != null; node = node.getParent()) {
+            Object nodeData = node.getData();
+            if (data == null ? nodeData == null : data.equals(nodeData)) {
+                return node;
+            }
         }
+        return null;
     }
 
     /**
@@ -207,12 +297,17 @@ public class TreeNodeImpl implements TreeNode {
      */
     @Override
     public TreeNode findChild(Object data) {
+        if (index != null) {
+            return index.first(data, this);
+        }
         //Решение с очередью
         //Может быть быстрее, может быть медленнее
         //Хуже по памяти
         //Правильнее: ищет "сверху вниз", т.е. сначала у детей, потом у вников, потом у правнуков
-        Queue<TreeNode> workSpace = new LinkedList<>(children);
-        boolean isFound = false;
+        if (children == null) {
+            return null;
+        }
+        ArrayDeque<TreeNode> workSpace = new ArrayDeque<>(children);
         while (!workSpace.isEmpty()) {
             TreeNode child = workSpace.poll();
             if (data == null && child.getData() == null || data != null && child.getData() != null && child.getData().equals(data)) {
@@ -240,5 +335,246 @@ public class TreeNodeImpl implements TreeNode {
 //        return null;
     }
 
+    /**
+     * @return <code>true</code>, если у узла есть индекс поддерева
+     */
+    public boolean isIndexed() {
+        return index != null;
+    }
+
+    /**
+     * Включает или выключает индекс "data -> узлы" для поддерева этого узла (без самого узла).<br/>
+     * Включение индекса обходит поддерево один раз; после этого {@link #findChild(Object)} работает за O(1) в среднем,
+     * а если искомый <code>data</code> есть у нескольких узлов - выбирает из них первый в порядке обхода в ширину,
+     * как и обход без индекса.
+     *
+     * @param indexed <code>true</code> - построить индекс, <code>false</code> - удалить его
+     */
+    public void setIndexed(boolean indexed) {
+        if (indexed == (index != null)) {
+            return;
+        }
+        if (indexed) {
+            index = new DataIndex();
+            underIndex = true;
+            if (children != null) {
+                for (TreeNode child : children) {
+                    index.addAll(subtree(child, true));
+                }
+            }
+        } else {
+            index = null;
+            TreeNodeImpl ancestor = indexedAncestor(this);
+            relabel(this, ancestor != null && ancestor.underIndex);
+        }
+    }
+
+    /**
+     * @return Ближайший родитель-<code>TreeNodeImpl</code>, если он покрыт индексом, иначе <code>null</code>
+     */
+    private static TreeNodeImpl indexedAncestor(TreeNodeImpl node) {
+        TreeNode parent = node.parent;
+        while (parent != null && !(parent instanceof TreeNodeImpl)) {
+            parent = parent.getParent();
+        }
+        return parent != null && ((TreeNodeImpl) parent).underIndex ? (TreeNodeImpl) parent : null;
+    }
 
+    /**
+     * Собирает узлы поддерева <code>node</code> (включая его самого) и проставляет им признак {@link #underIndex}:
+     * <code>covered</code> - покрыто ли поддерево индексом сверху.
+     */
+    private static ArrayList<TreeNode> subtree(TreeNode node, boolean covered) {
+        ArrayList<TreeNode> result = new ArrayList<>();
+        result.add(node);
+        for (int i = 0; i < result.size(); i++) {
+            result.get(i).getChildrenIterator().forEachRemaining(result::add);
+        }
+        relabel(node, covered);
+        return result;
+    }
+
+    /**
+     * Пересчитывает {@link #underIndex} в поддереве <code>node</code>
+     */
+    private static void relabel(TreeNode node, boolean covered) {
+        ArrayDeque<TreeNode> nodes = new ArrayDeque<>();
+        ArrayDeque<Boolean> coverage = new ArrayDeque<>();
+        nodes.push(node);
+        coverage.push(covered);
+        while (!nodes.isEmpty()) {
+            TreeNode current = nodes.pop();
+            boolean currentCovered = coverage.pop();
+            if (current instanceof TreeNodeImpl) {
+                TreeNodeImpl impl = (TreeNodeImpl) current;
+                currentCovered |= impl.index != null;
+                impl.underIndex = currentCovered;
+            }
+            for (Iterator<TreeNode> it = current.getChildrenIterator(); it.hasNext(); ) {
+                nodes.push(it.next());
+                coverage.push(currentCovered);
+            }
+        }
+    }
+
+    /**
+     * Таблица "data -> узлы". Значение - сам узел или, если узлов с таким data несколько, {@link Duplicates}.
+     */
+    private static final class DataIndex {
+        private final HashMap<Object, Object> nodes = new HashMap<>();
+
+        void addAll(Iterable<TreeNode> subtree) {
+            for (TreeNode node : subtree) {
+                add(node.getData(), node);
+            }
+        }
+
+        void removeAll(Iterable<TreeNode> subtree) {
+            for (TreeNode node : subtree) {
+                remove(node.getData(), node);
+            }
+        }
+
+        void add(Object data, TreeNode node) {
+            Object value = nodes.get(data);
+            if (value == null) {
+                nodes.put(data, node);
+            } else if (value instanceof Duplicates) {
+                ((Duplicates) value).add(node);
+            } else {
+                nodes.put(data, new Duplicates((TreeNode) value, node));
+            }
+        }
+
+        void remove(Object data, TreeNode node) {
+            Object value = nodes.get(data);
+            if (value == node) {
+                nodes.remove(data);
+            } else if (value instanceof Duplicates) {
+                Duplicates duplicates = (Duplicates) value;
+                ArrayList<TreeNode> list = duplicates.nodes;
+                for (int i = 0; i < list.size(); i++) {
+                    if (list.get(i) == node) {
+                        list.remove(i);
+                        break;
+                    }
+                }
+                if (list.size() == 1) {
+                    nodes.put(data, list.get(0));
+                } else if (duplicates.first == node) {
+                    duplicates.first = null;
+                }
+            }
+        }
+
+        /**
+         * @return Узел с заданным data, первый в порядке обхода поддерева <code>owner</code> в ширину
+         */
+        TreeNode first(Object data, TreeNode owner) {
+            Object value = nodes.get(data);
+            if (!(value instanceof Duplicates)) {
+                return (TreeNode) value;
+            }
+            return ((Duplicates) value).first(owner);
+        }
+
+        /**
+         * Узлы с одинаковым data и первый из них в порядке обхода в ширину (кешируется до удаления этого узла)
+         */
+        private static final class Duplicates {
+            private final ArrayList<TreeNode> nodes = new ArrayList<>(2);
+            /**
+             * Первый узел или <code>null</code>, если его нужно найти заново
+             */
+            private TreeNode first;
+
+            Duplicates(TreeNode a, TreeNode b) {
+                nodes.add(a);
+                nodes.add(b);
+            }
+
+            void add(TreeNode node) {
+                nodes.add(node);
+                if (first != null && compareBreadthFirst(node, first) < 0) {
+                    first = node;
+                }
+            }
+
+            /**
+             * Находит первый узел за один проход: глубины узлов считаются с запоминанием, поэтому каждый узел
+             * поддерева проходится не больше одного раза; порядок среди детей сравнивается только у самых мелких узлов.
+             */
+            TreeNode first(TreeNode owner) {
+                if (first != null) {
+                    return first;
+                }
+                IdentityHashMap<TreeNode, Integer> depths = new IdentityHashMap<>();
+                depths.put(owner, 0);
+                ArrayList<TreeNode> path = new ArrayList<>();
+                TreeNode result = null;
+                int resultDepth = Integer.MAX_VALUE;
+                for (TreeNode node : nodes) {
+                    TreeNode ancestor = node;
+                    Integer known;
+                    while ((known = depths.get(ancestor)) == null) {
+                        path.add(ancestor);
+                        ancestor = ancestor.getParent();
+                    }
+                    int depth = known + path.size();
+                    for (int i = path.size() - 1; i >= 0; i--) {
+                        depths.put(path.get(i), depth - i);
+                    }
+                    path.clear();
+                    if (depth < resultDepth || depth == resultDepth && compareSiblings(node, result) < 0) {
+                        result = node;
+                        resultDepth = depth;
+                    }
+                }
+                first = result;
+                return result;
+            }
+        }
+
+        /**
+         * Сравнивает положение двух разных узлов поддерева при обходе в ширину:
+         * сначала по глубине, затем по порядку их предков среди детей общего родителя.
+         */
+        private static int compareBreadthFirst(TreeNode a, TreeNode b) {
+            // глубины сравниваются подъемом обоих узлов до корня; разница глубин относительно любого предка та же
+            int depthA = depth(a);
+            int depthB = depth(b);
+            if (depthA != depthB) {
+                return Integer.compare(depthA, depthB);
+            }
+            return compareSiblings(a, b);
+        }
+
+        /**
+         * Сравнивает положение двух разных узлов одной глубины по порядку их предков среди детей общего родителя
+         */
+        private static int compareSiblings(TreeNode a, TreeNode b) {
+            while (a.getParent() != b.getParent()) {
+                a = a.getParent();
+                b = b.getParent();
+            }
+            for (Iterator<TreeNode> it = a.getParent().getChildrenIterator(); it.hasNext(); ) {
+                TreeNode sibling = it.next();
+                if (sibling == a) {
+                    return -1;
+                }
+                if (sibling == b) {
+                    return 1;
+                }
+            }
+            return 0;
+        }
+
+        private static int depth(TreeNode node) {
+            int depth = 0;
+            for (; node != null; node = node.getParent()) {
+                depth++;
+            }
+            return depth;
+        }
+    }
 }
@@ -0,0 +1,548 @@
+package ru.skillbench.tasks.javaapi.collections;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Двоичный снимок дерева {@link TreeNode} в файле и его ленивая загрузка.<br/>
+ * Формат (big-endian):<ul>
+ * <li>заголовок: сигнатура, версия, число узлов, число значений данных, смещения таблицы данных и ее оглавления;</li>
+ * <li>узлы в порядке прямого обхода, по 12 байт: номер значения данных (-1 для <code>null</code>),
+ * число детей (старший бит - признак "развернутости"), размер поддерева;</li>
+ * <li>таблица различных значений данных: тег типа и значение (<code>String</code>, <code>Integer</code>, <code>Long</code>
+ * или любой {@link java.io.Serializable} в виде байтов Java-сериализации);</li>
+ * <li>оглавление таблицы: смещение каждого значения.</li></ul>
+ * Первый ребенок узла <code>i</code> имеет номер <code>i + 1</code>, следующий брат узла <code>j</code> -
+ * <code>j + размер поддерева j</code>, поэтому детей любого узла можно прочитать, не читая остальное поддерево.<br/>
+ * {@link #write(TreeNode, Path)} пишет узлы по мере обхода, дописывая размер поддерева, когда обход из него выходит.
+ * {@link #load(Path)} отображает файл в память и возвращает корень, у которого дети читаются из файла только при первом
+ * обращении к ним ({@link TreeNode#getChildrenIterator()} и т.п.), а значения данных - при первом {@link TreeNode#getData()}.
+ */
+public final class TreeSnapshot {
+    private static final int MAGIC = 0x54524e53;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_BYTES = 12;
+    private static final int EXPANDED_BIT = 0x80000000;
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INTEGER = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_SERIALIZED = 4;
+
+    private TreeSnapshot() {
+    }
+
+    /**
+     * Записывает дерево с корнем <code>root</code> в файл (файл перезаписывается).<br/>
+     * Снимок пишется во временный файл в том же каталоге, который затем переименовывается в <code>file</code>,
+     * поэтому при ошибке посреди записи прежний снимок остается целым.
+     *
+     * @throws IOException при ошибке записи или если данные узла не {@link java.io.Serializable}
+     */
+    public static void write(TreeNode root, Path file) throws IOException {
+        Path target = file.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                write(root, channel);
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException deleteError) {
+                e.addSuppressed(deleteError);
+            }
+            throw e;
+        }
+    }
+
+    private static void write(TreeNode root, FileChannel channel) throws IOException {
+        RecordWriter records = new RecordWriter(channel);
+        HashMap<Object, Integer> dataIds = new HashMap<>();
+        ArrayList<Object> dataValues = new ArrayList<>();
+
+        int[] path = new int[16];
+        int pathLength = 0;
+        ArrayDeque<Iterator<TreeNode>> children = new ArrayDeque<>();
+        int count = 0;
+        TreeNode next = root;
+        while (true) {
+            if (next != null) {
+                Object data = next.getData();
+                int dataId = -1;
+                if (data != null) {
+                    Integer known = dataIds.get(data);
+                    if (known == null) {
+                        known = dataValues.size();
+                        dataIds.put(data, known);
+                        dataValues.add(data);
+                    }
+                    dataId = known;
+                }
+                int childCount = next.getChildCount() | (next.isExpanded() ? EXPANDED_BIT : 0);
+                records.append(dataId, childCount, 0);
+                if (pathLength == path.length) {
+                    path = Arrays.copyOf(path, pathLength * 2);
+                }
+                path[pathLength++] = count++;
+                children.push(next.getChildrenIterator());
+            }
+            Iterator<TreeNode> it = children.peek();
+            if (it.hasNext()) {
+                next = it.next();
+            } else {
+                children.pop();
+                int id = path[--pathLength];
+                records.patchSubtreeSize(id, count - id);
+                if (pathLength == 0) {
+                    break;
+                }
+                next = null;
+            }
+        }
+        records.flush();
+
+        long dataOffset = HEADER_BYTES + (long) count * RECORD_BYTES;
+        long[] offsets = new long[dataValues.size()];
+        channel.position(dataOffset);
+        CountingOutputStream counter = new CountingOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_BYTES));
+        DataOutputStream out = new DataOutputStream(counter);
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = dataOffset + counter.count;
+            writeValue(out, dataValues.get(i));
+        }
+        long indexOffset = dataOffset + counter.count;
+        for (long offset : offsets) {
+            out.writeLong(offset);
+        }
+        out.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(offsets.length)
+                .putLong(dataOffset).putLong(indexOffset).flip();
+        writeFully(channel, header, 0);
+    }
+
+    /**
+     * Загружает снимок: файл отображается в память, узлы и данные читаются по мере обращения к ним.
+     *
+     * @return Корень дерева
+     * @throws IOException при ошибке чтения, если файл не является снимком или больше 2 Гб
+     */
+    public static Node load(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large to map: " + channel.size());
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new StreamCorruptedException("Not a tree snapshot: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new StreamCorruptedException("Unsupported snapshot version: " + buffer.getInt(4));
+        }
+        Source source = new Source(buffer);
+        if (source.nodeCount <= 0 || HEADER_BYTES + (long) source.nodeCount * RECORD_BYTES > buffer.capacity()) {
+            throw new StreamCorruptedException("Invalid node count: " + source.nodeCount);
+        }
+        return new Node(source, null, 0, null);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(TAG_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                objects.writeObject(value);
+            }
+            out.writeByte(TAG_SERIALIZED);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Буферизованная запись узлов; размер поддерева дописывается в буфер или, если буфер уже записан, в файл
+     */
+    private static final class RecordWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES / RECORD_BYTES * RECORD_BYTES);
+        private final ByteBuffer patch = ByteBuffer.allocate(4);
+        /**
+         * Номер первого узла в буфере
+         */
+        private int bufferStart;
+
+        RecordWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void append(int dataId, int childCount, int subtreeSize) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.putInt(dataId).putInt(childCount).putInt(subtreeSize);
+        }
+
+        void patchSubtreeSize(int id, int subtreeSize) throws IOException {
+            if (id >= bufferStart) {
+                buffer.putInt((id - bufferStart) * RECORD_BYTES + 8, subtreeSize);
+            } else {
+                patch.clear();
+                patch.putInt(subtreeSize).flip();
+                writeFully(channel, patch, HEADER_BYTES + (long) id * RECORD_BYTES + 8);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            writeFully(channel, buffer, HEADER_BYTES + (long) bufferStart * RECORD_BYTES);
+            bufferStart += buffer.limit() / RECORD_BYTES;
+            buffer.clear();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Отображенный файл и уже прочитанные значения данных
+     */
+    private static final class Source {
+        private final MappedByteBuffer buffer;
+        private final int nodeCount;
+        private final long indexOffset;
+        private final Object[] values;
+
+        Source(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.nodeCount = buffer.getInt(8);
+            this.values = new Object[buffer.getInt(12)];
+            this.indexOffset = buffer.getLong(24);
+        }
+
+        int dataId(int id) {
+            return buffer.getInt(HEADER_BYTES + id * RECORD_BYTES);
+        }
+
+        int childCount(int id) {
+            return buffer.getInt(HEADER_BYTES + id * RECORD_BYTES + 4) & ~EXPANDED_BIT;
+        }
+
+        boolean isExpanded(int id) {
+            return (buffer.getInt(HEADER_BYTES + id * RECORD_BYTES + 4) & EXPANDED_BIT) != 0;
+        }
+
+        int subtreeSize(int id) {
+            return buffer.getInt(HEADER_BYTES + id * RECORD_BYTES + 8);
+        }
+
+        Object value(int dataId) {
+            if (dataId < 0) {
+                return null;
+            }
+            Object value = values[dataId];
+            if (value == null) {
+                value = decode((int) buffer.getLong((int) indexOffset + dataId * 8));
+                values[dataId] = value;
+            }
+            return value;
+        }
+
+        private Object decode(int offset) {
+            byte tag = buffer.get(offset);
+            switch (tag) {
+                case TAG_STRING: {
+                    byte[] bytes = new byte[buffer.getInt(offset + 1)];
+                    ByteBuffer view = buffer.duplicate();
+                    view.position(offset + 5);
+                    view.get(bytes);
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+                case TAG_INTEGER:
+                    return buffer.getInt(offset + 1);
+                case TAG_LONG:
+                    return buffer.getLong(offset + 1);
+                case TAG_SERIALIZED: {
+                    byte[] bytes = new byte[buffer.getInt(offset + 1)];
+                    ByteBuffer view = buffer.duplicate();
+                    view.position(offset + 5);
+                    view.get(bytes);
+                    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                        return in.readObject();
+                    } catch (IOException | ClassNotFoundException e) {
+                        throw new IllegalStateException("Cannot decode snapshot value at " + offset, e);
+                    }
+                }
+                default:
+                    throw new IllegalStateException("Unknown snapshot value tag " + tag + " at " + offset);
+            }
+        }
+    }
+
+    /**
+     * Узел загруженного снимка.<br/>
+     * Пока дети не прочитаны, {@link #getChildCount()} и {@link #isLeaf()} берутся из файла, а {@link #setExpanded(boolean)}
+     * лишь запоминает значение для непрочитанного поддерева - оно применяется к детям при их чтении. Поэтому
+     * разворачивание и сворачивание ветвей (как в UI) не читает поддерево целиком.<br/>
+     * После чтения детей узел ведет себя как {@link TreeNodeImpl}: детей можно добавлять и удалять.
+     * Экземпляр не потокобезопасен.
+     */
+    public static final class Node implements TreeNode {
+        private final Source source;
+        private final int id;
+        private TreeNode parent;
+        private ArrayList<TreeNode> children;
+        private boolean expanded;
+        /**
+         * Значение {@link #setExpanded(boolean)} для непрочитанных детей или <code>null</code>
+         */
+        private Boolean pendingExpanded;
+        private boolean dataLoaded;
+        private Object data;
+
+        private Node(Source source, TreeNode parent, int id, Boolean inheritedExpanded) {
+            this.source = source;
+            this.parent = parent;
+            this.id = id;
+            this.expanded = inheritedExpanded != null ? inheritedExpanded : source.isExpanded(id);
+            this.pendingExpanded = inheritedExpanded;
+        }
+
+        /**
+         * @return <code>true</code>, если дети узла уже прочитаны из файла
+         */
+        public boolean isChildrenLoaded() {
+            return children != null;
+        }
+
+        private ArrayList<TreeNode> children() {
+            if (children == null) {
+                int count = source.childCount(id);
+                children = new ArrayList<>(count);
+                int child = id + 1;
+                for (int i = 0; i < count; i++) {
+                    children.add(new Node(source, this, child, pendingExpanded));
+                    child += source.subtreeSize(child);
+                }
+                pendingExpanded = null;
+            }
+            return children;
+        }
+
+        @Override
+        public TreeNode getParent() {
+            return parent;
+        }
+
+        @Override
+        public void setParent(TreeNode parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public TreeNode getRoot() {
+            if (parent == null) {
+                return null;
+            }
+            TreeNode root = parent;
+            while (root.getParent() != null) {
+                root = root.getParent();
+            }
+            return root;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return children == null ? source.childCount(id) == 0 : children.isEmpty();
+        }
+
+        @Override
+        public int getChildCount() {
+            return children == null ? source.childCount(id) : children.size();
+        }
+
+        @Override
+        public Iterator<TreeNode> getChildrenIterator() {
+            return isLeaf() && children == null ? Collections.<TreeNode>emptyIterator() : children().iterator();
+        }
+
+        @Override
+        public void addChild(TreeNode child) {
+            if (child == null) {
+                throw new NullPointerException("child");
+            }
+            children().add(child);
+            child.setParent(this);
+        }
+
+        @Override
+        public boolean removeChild(TreeNode child) {
+            if (child == null || isLeaf()) {
+                return false;
+            }
+            int position = children().indexOf(child);
+            if (position < 0) {
+                return false;
+            }
+            children.remove(position).setParent(null);
+            return true;
+        }
+
+        @Override
+        public boolean isExpanded() {
+            return expanded;
+        }
+
+        @Override
+        public void setExpanded(boolean expanded) {
+            ArrayDeque<TreeNode> stack = new ArrayDeque<>();
+            stack.push(this);
+            while (!stack.isEmpty()) {
+                TreeNode node = stack.pop();
+                if (!(node instanceof Node)) {
+                    node.setExpanded(expanded);
+                    continue;
+                }
+                Node current = (Node) node;
+                current.expanded = expanded;
+                if (current.children == null) {
+                    current.pendingExpanded = expanded;
+                } else {
+                    current.children.forEach(stack::push);
+                }
+            }
+        }
+
+        @Override
+        public Object getData() {
+            if (!dataLoaded) {
+                data = source.value(source.dataId(id));
+                dataLoaded = true;
+            }
+            return data;
+        }
+
+        @Override
+        public void setData(Object data) {
+            this.data = data;
+            dataLoaded = true;
+        }
+
+        @Override
+        public String getTreePath() {
+            ArrayList<String> names = new ArrayList<>();
+            int length = 0;
+            for (TreeNode node = this; node != null; node = node.getParent()) {
+                Object nodeData = node.getData();
+                String name = nodeData == null ? "empty" : nodeData.toString();
+                names.add(name);
+                length += name.length() + 2;
+            }
+            StringBuilder result = new StringBuilder(length);
+            for (int i = names.size() - 1; i >= 0; i--) {
+                result.append(names.get(i));
+                if (i > 0) {
+                    result.append("->");
+                }
+            }
+            return result.toString();
+        }
+
+        @Override
+        public TreeNode findParent(Object data) {
+            for (TreeNode node = this; node != null; node = node.getParent()) {
+                Object nodeData = node.getData();
+                if (data == null ? nodeData == null : data.equals(nodeData)) {
+                    return node;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Ищет в ширину, как {@link TreeNodeImpl#findChild(Object)}; читает из файла все пройденные узлы
+         */
+        @Override
+        public TreeNode findChild(Object data) {
+            Iterator<TreeNode> it = TreeTraversal.breadthFirst(this);
+            it.next();
+            while (it.hasNext()) {
+                TreeNode node = it.next();
+                Object nodeData = node.getData();
+                if (data == null ? nodeData == null : data.equals(nodeData)) {
+                    return node;
+                }
+            }
+            return null;
+        }
+    }
+}
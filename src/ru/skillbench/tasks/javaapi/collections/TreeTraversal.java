@@ -0,0 +1,265 @@
+package ru.skillbench.tasks.javaapi.collections;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Обходы поддерева {@link TreeNode} без рекурсии.<br/>
+ * Итераторы не копируют узлы в промежуточные коллекции: в прямом и обратном обходе хранится стек итераторов
+ * дочерних узлов (по одному на уровень, т.е. O(глубины) памяти), в обходе в ширину - очередь итераторов
+ * дочерних узлов еще не пройденных родителей. Поэтому обходы работают и на деревьях глубиной в сотни тысяч уровней.<br/>
+ * Все обходы начинаются с самого узла <code>root</code> (он тоже входит в результат).
+ * Дерево нельзя изменять во время обхода.
+ */
+public final class TreeTraversal {
+    private TreeTraversal() {
+    }
+
+    /**
+     * @return Итератор прямого обхода (pre-order): узел, затем поддеревья его детей по порядку
+     */
+    public static Iterator<TreeNode> preOrder(TreeNode root) {
+        return new PreOrderIterator(root);
+    }
+
+    /**
+     * @return Итератор обратного обхода (post-order): поддеревья детей по порядку, затем сам узел
+     */
+    public static Iterator<TreeNode> postOrder(TreeNode root) {
+        return new PostOrderIterator(root);
+    }
+
+    /**
+     * @return Итератор обхода в ширину: узел, его дети, внуки и т.д.
+     */
+    public static Iterator<TreeNode> breadthFirst(TreeNode root) {
+        return new BreadthFirstIterator(root);
+    }
+
+    /**
+     * Возвращает {@link Spliterator} узлов поддерева в порядке прямого обхода.<br/>
+     * {@link Spliterator#trySplit()} делит поддерево по границам дочерних узлов: отдает узел и первую половину
+     * его поддеревьев-детей, оставляя себе вторую. Поэтому параллельный поток по широкому дереву
+     * распределяется по ядрам, а цепочку (узлы с одним ребенком) разделить нельзя, и она обходится последовательно.
+     */
+    public static Spliterator<TreeNode> spliterator(TreeNode root) {
+        return new SubtreeSpliterator(root, null, new TreeNode[0], 0, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return Последовательный поток узлов поддерева в порядке прямого обхода
+     */
+    public static Stream<TreeNode> stream(TreeNode root) {
+        return stream(root, false);
+    }
+
+    /**
+     * @param parallel <code>true</code> - параллельный поток (см. {@link #spliterator(TreeNode)})
+     * @return Поток узлов поддерева в порядке прямого обхода
+     */
+    public static Stream<TreeNode> stream(TreeNode root, boolean parallel) {
+        return StreamSupport.stream(spliterator(root), parallel);
+    }
+
+    /**
+     * Узел <code>head</code>, остаток прямого обхода <code>current</code> и поддеревья <code>forest[from, to)</code> -
+     * именно в таком порядке
+     */
+    private static final class SubtreeSpliterator implements Spliterator<TreeNode> {
+        private TreeNode head;
+        private Iterator<TreeNode> current;
+        private TreeNode[] forest;
+        private int from;
+        private int to;
+        private long estimate;
+
+        SubtreeSpliterator(TreeNode head, Iterator<TreeNode> current, TreeNode[] forest, int from, int to, long estimate) {
+            this.head = head;
+            this.current = current;
+            this.forest = forest;
+            this.from = from;
+            this.to = to;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super TreeNode> action) {
+            if (head != null) {
+                TreeNode node = head;
+                head = null;
+                if (current == null && from == to && !node.isLeaf()) {
+                    current = preOrder(node);
+                    current.next();
+                }
+                action.accept(node);
+                return true;
+            }
+            while (current == null || !current.hasNext()) {
+                if (from == to) {
+                    current = null;
+                    return false;
+                }
+                current = preOrder(forest[from++]);
+            }
+            action.accept(current.next());
+            return true;
+        }
+
+        @Override
+        public Spliterator<TreeNode> trySplit() {
+            if (to - from < 2) {
+                if (head == null && current == null && to - from == 1) {
+                    // единственное оставшееся поддерево: его корень становится головным узлом
+                    head = forest[from++];
+                }
+                // единственный еще не начатый узел раскрывается: он сам и его дети вместо него
+                if (head == null || current != null || from != to) {
+                    return null;
+                }
+                ArrayList<TreeNode> children = new ArrayList<>();
+                head.getChildrenIterator().forEachRemaining(children::add);
+                if (children.size() < 2) {
+                    return null;
+                }
+                forest = children.toArray(new TreeNode[0]);
+                from = 0;
+                to = forest.length;
+            }
+            int middle = (from + to) >>> 1;
+            estimate >>>= 1;
+            SubtreeSpliterator prefix = new SubtreeSpliterator(head, current, forest, from, middle, estimate);
+            head = null;
+            current = null;
+            from = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+    }
+
+    private static final class PreOrderIterator implements Iterator<TreeNode> {
+        private final ArrayDeque<Iterator<TreeNode>> stack = new ArrayDeque<>();
+        private TreeNode next;
+
+        PreOrderIterator(TreeNode root) {
+            next = root;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public TreeNode next() {
+            TreeNode result = next;
+            if (result == null) {
+                throw new NoSuchElementException();
+            }
+            if (!result.isLeaf()) {
+                stack.push(result.getChildrenIterator());
+            }
+            next = null;
+            while (!stack.isEmpty()) {
+                Iterator<TreeNode> children = stack.peek();
+                if (children.hasNext()) {
+                    next = children.next();
+                    break;
+                }
+                stack.pop();
+            }
+            return result;
+        }
+    }
+
+    private static final class PostOrderIterator implements Iterator<TreeNode> {
+        private final ArrayDeque<TreeNode> nodes = new ArrayDeque<>();
+        private final ArrayDeque<Iterator<TreeNode>> stack = new ArrayDeque<>();
+
+        PostOrderIterator(TreeNode root) {
+            descend(root);
+        }
+
+        /**
+         * Спускается от <code>node</code> по первым детям до листа, кладя пройденные узлы в стек
+         */
+        private void descend(TreeNode node) {
+            while (true) {
+                nodes.push(node);
+                Iterator<TreeNode> children = node.getChildrenIterator();
+                stack.push(children);
+                if (!children.hasNext()) {
+                    return;
+                }
+                node = children.next();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !nodes.isEmpty();
+        }
+
+        @Override
+        public TreeNode next() {
+            if (nodes.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            TreeNode result = nodes.pop();
+            stack.pop();
+            if (!stack.isEmpty() && stack.peek().hasNext()) {
+                descend(stack.peek().next());
+            }
+            return result;
+        }
+    }
+
+    private static final class BreadthFirstIterator implements Iterator<TreeNode> {
+        private final ArrayDeque<Iterator<TreeNode>> queue = new ArrayDeque<>();
+        private TreeNode next;
+
+        BreadthFirstIterator(TreeNode root) {
+            next = root;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public TreeNode next() {
+            TreeNode result = next;
+            if (result == null) {
+                throw new NoSuchElementException();
+            }
+            if (!result.isLeaf()) {
+                queue.add(result.getChildrenIterator());
+            }
+            next = null;
+            while (!queue.isEmpty()) {
+                Iterator<TreeNode> children = queue.peek();
+                if (children.hasNext()) {
+                    next = children.next();
+                    break;
+                }
+                queue.poll();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package ru.skillbench.tasks.text;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+/**
+ * Пакетный расчет возраста для множества визитных карточек относительно одной фиксированной даты.<br/>
+ * В отличие от {@link ContactCard#getAgeYears()}, не создает объектов {@link java.time.Period}
+ * и {@link java.util.Calendar}: даты рождения переводятся из номера дня от эпохи в год/месяц/день
+ * целочисленной арифметикой. Результат совпадает с <code>Period.between(birthday, reference).getYears()</code>.
+ */
+public class ContactAges {
+    /**
+     * Значение возраста для карточек без даты рождения
+     */
+    public static final int NO_AGE = Integer.MIN_VALUE;
+
+    private ContactAges() {
+    }
+
+    /**
+     * @param cards     Карточки; для {@link ContactCardImpl} и {@link ContactCardBufferImpl} дата рождения
+     *                  читается без создания {@link java.util.Calendar}
+     * @param reference Дата, на которую считается возраст
+     * @return Возраст в годах для каждой карточки в порядке обхода коллекции или {@link #NO_AGE}
+     */
+    public static int[] ageYears(Collection<? extends ContactCard> cards, LocalDate reference) {
+        int[] epochDays = new int[cards.size()];
+        int i = 0;
+        for (ContactCard card : cards) {
+            epochDays[i++] = ContactStore.birthdayOf(card);
+        }
+        return ageYears(epochDays, epochDays.length, reference, epochDays);
+    }
+
+    /**
+     * @param store     Колоночное хранилище карточек
+     * @param reference Дата, на которую считается возраст
+     * @return Возраст в годах для каждой строки хранилища или {@link #NO_AGE}
+     */
+    public static int[] ageYears(ContactStore store, LocalDate reference) {
+        int[] epochDays = new int[store.size()];
+        for (int row = 0; row < epochDays.length; row++) {
+            epochDays[row] = store.getBirthdayEpochDay(row);
+        }
+        return ageYears(epochDays, epochDays.length, reference, epochDays);
+    }
+
+    /**
+     * @param epochDays Даты рождения как номера дней от эпохи; {@link ContactStore#NO_BIRTHDAY} - нет даты
+     * @param reference Дата, на которую считается возраст
+     * @return Возраст в годах для каждой даты или {@link #NO_AGE}
+     */
+    public static int[] ageYears(int[] epochDays, LocalDate reference) {
+        return ageYears(epochDays, epochDays.length, reference, new int[epochDays.length]);
+    }
+
+    /**
+     * Вариант без выделения памяти: результат записывается в <code>result</code>
+     * (допускается <code>result == epochDays</code>).
+     *
+     * @param epochDays Даты рождения как номера дней от эпохи; {@link ContactStore#NO_BIRTHDAY} - нет даты
+     * @param count     Число первых элементов <code>epochDays</code>, которые нужно обработать
+     * @param reference Дата, на которую считается возраст
+     * @param result    Массив длиной не меньше <code>count</code>
+     * @return <code>result</code>
+     */
+    public static int[] ageYears(int[] epochDays, int count, LocalDate reference, int[] result) {
+        int referenceYear = reference.getYear();
+        int referenceMonthDay = reference.getMonthValue() * 32 + reference.getDayOfMonth();
+        for (int i = 0; i < count; i++) {
+            int epochDay = epochDays[i];
+            if (epochDay == ContactStore.NO_BIRTHDAY) {
+                result[i] = NO_AGE;
+                continue;
+            }
+            // Преобразование номера дня в дату по "эрам" в 400 лет, см. LocalDate.ofEpochDay
+            long zeroDay = epochDay + 719468L;
+            long era = (zeroDay >= 0 ? zeroDay : zeroDay - 146096) / 146097;
+            int dayOfEra = (int) (zeroDay - era * 146097);
+            int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            int shiftedMonth = (5 * dayOfYear + 2) / 153;
+            int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+            int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+            int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+            int age = referenceYear - year;
+            int monthDay = month * 32 + day;
+            if (age > 0 && referenceMonthDay < monthDay) {
+                age--;
+            } else if (age < 0 && referenceMonthDay > monthDay) {
+                age++;
+            }
+            result[i] = age;
+        }
+        return result;
+    }
+
+    /**
+     * @param ages Результат {@link #ageYears(int[], LocalDate)}
+     * @return Массив, в котором элемент с индексом N - число людей в возрасте N лет.
+     * Отрицательные значения и {@link #NO_AGE} не учитываются.
+     */
+    public static int[] histogram(int[] ages) {
+        int max = -1;
+        for (int age : ages) {
+            max = Math.max(max, age);
+        }
+        int[] result = new int[max + 1];
+        for (int age : ages) {
+            if (age >= 0) {
+                result[age]++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Номер возрастной группы: 0 - младше <code>bounds[0]</code>, k - от <code>bounds[k-1]</code>
+     * (включительно) до <code>bounds[k]</code>, <code>bounds.length</code> - не младше последней границы.
+     *
+     * @param age    Возраст в годах
+     * @param bounds Возрастающие границы групп, например {18, 30, 45, 65}
+     * @return Номер группы или -1 для {@link #NO_AGE}
+     */
+    public static int bucketOf(int age, int[] bounds) {
+        if (age == NO_AGE) {
+            return -1;
+        }
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (bounds[middle] <= age) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param ages   Результат {@link #ageYears(int[], LocalDate)}
+     * @param bounds Возрастающие границы групп, см. {@link #bucketOf(int, int[])}
+     * @return Число людей в каждой из <code>bounds.length + 1</code> групп; {@link #NO_AGE} не учитывается
+     * @throws IllegalArgumentException если границы не возрастают
+     */
+    public static int[] bucketCounts(int[] ages, int[] bounds) {
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("bounds must be strictly increasing");
+            }
+        }
+        int[] result = new int[bounds.length + 1];
+        for (int age : ages) {
+            int bucket = bucketOf(age, bounds);
+            if (bucket >= 0) {
+                result[bucket]++;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,425 @@
+package ru.skillbench.tasks.text;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * Реализация {@link ContactCard}, которая разбирает vCard прямо из байтов в кодировке UTF-8,
+ * не декодируя весь текст в {@link String}.<br/>
+ * Значения FN и ORG хранятся как смещения в буфере и превращаются в строки только при первом обращении;
+ * номера TEL хранятся как упакованные <code>long</code>, дата рождения - как номер дня от эпохи.<br/>
+ * Формат данных и исключения - те же, что у {@link ContactCardImpl}.
+ */
+public class ContactCardBufferImpl implements ContactCard {
+    private static final long NO_BIRTHDAY = Long.MIN_VALUE;
+
+    private ByteBuffer buffer;
+    private int fullNameStart;
+    private int fullNameEnd;
+    private int organisationStart;
+    private int organisationEnd;
+    private String fullName;
+    private String organisation;
+    private boolean gender;
+    private long birthday;
+    private long[] phoneNumbers;
+    /**
+     * Для каждого телефона - смещение (старшие 32 бита) и длина (младшие 32 бита) его типа в буфере
+     */
+    private long[] phoneTypes;
+    private int phoneCount;
+
+    public ContactCardBufferImpl() {
+        this.buffer = null;
+        this.fullName = null;
+        this.organisation = null;
+        this.gender = false;
+        this.birthday = NO_BIRTHDAY;
+        this.phoneNumbers = null;
+        this.phoneTypes = null;
+        this.phoneCount = 0;
+    }
+
+    /**
+     * Метод считывает все строки из {@link Scanner} и вызывает {@link #getInstance(String)}
+     *
+     * @param scanner Источник данных
+     * @return {@link ContactCard}, созданный из этих данных
+     */
+    @Override
+    public ContactCard getInstance(Scanner scanner) {
+        StringBuilder string = new StringBuilder();
+        while (scanner.hasNextLine()) {
+            string.append(scanner.nextLine()).append('\n');
+        }
+        return getInstance(string.toString());
+    }
+
+    /**
+     * Метод кодирует данные в UTF-8 и вызывает {@link #getInstance(ByteBuffer)}
+     *
+     * @param data Данные для разбора, имеющие формат, описанный в {@link #getInstance(Scanner)}
+     * @return {@link ContactCard}, созданный из этих данных
+     */
+    @Override
+    public ContactCard getInstance(String data) {
+        return getInstance(ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Отображает файл в память и разбирает его содержимое методом {@link #getInstance(ByteBuffer)}.
+     *
+     * @param path Файл с одной vCard в кодировке UTF-8
+     * @return {@link ContactCard}, созданный из этих данных
+     * @throws IOException если файл не удалось открыть или отобразить в память
+     */
+    public ContactCard getInstance(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return getInstance(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Разбирает vCard между <code>position</code> и <code>limit</code> буфера.
+     * Позиция самого буфера не меняется; карточка хранит ссылку на буфер, поэтому его содержимое
+     * не должно изменяться, пока карточка используется.
+     *
+     * @param buffer Данные в кодировке UTF-8, имеющие формат, описанный в {@link #getInstance(Scanner)}
+     * @return {@link ContactCard}, созданный из этих данных
+     * @throws InputMismatchException см. {@link #getInstance(Scanner)}
+     * @throws NoSuchElementException см. {@link #getInstance(Scanner)}
+     */
+    public ContactCard getInstance(ByteBuffer buffer) {
+        this.buffer = buffer;
+        fullName = null;
+        organisation = null;
+        fullNameStart = -1;
+        organisationStart = -1;
+        gender = false;
+        birthday = NO_BIRTHDAY;
+        phoneCount = 0;
+        boolean begin = false;
+        boolean end = false;
+
+        int position = buffer.position();
+        int limit = buffer.limit();
+        while (position < limit) {
+            int lineEnd = position;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            if (lineEnd > position) {
+                if (end) {
+                    throw new InputMismatchException();
+                }
+                int separator = position;
+                while (separator < lineEnd && buffer.get(separator) != ':' && buffer.get(separator) != ';') {
+                    separator++;
+                }
+                if (separator == lineEnd) {
+                    throw new InputMismatchException();
+                }
+                int dataStart = separator + 1;
+                if (!begin) {
+                    if (!equalsAscii(position, separator, "BEGIN")) {
+                        throw new InputMismatchException();
+                    }
+                    begin = equalsAscii(dataStart, lineEnd, "VCARD");
+                    if (!begin) {
+                        throw new InputMismatchException();
+                    }
+                } else if (equalsAscii(position, separator, "FN")) {
+                    fullNameStart = dataStart;
+                    fullNameEnd = lineEnd;
+                } else if (equalsAscii(position, separator, "ORG")) {
+                    organisationStart = dataStart;
+                    organisationEnd = lineEnd;
+                } else if (equalsAscii(position, separator, "GENDER")) {
+                    if (equalsAscii(dataStart, lineEnd, "F")) {
+                        gender = true;
+                    } else if (equalsAscii(dataStart, lineEnd, "M")) {
+                        gender = false;
+                    } else {
+                        throw new InputMismatchException();
+                    }
+                } else if (equalsAscii(position, separator, "TEL")) {
+                    parsePhone(dataStart, lineEnd);
+                } else if (equalsAscii(position, separator, "BDAY")) {
+                    birthday = parseBirthday(dataStart, lineEnd);
+                } else if (equalsAscii(position, separator, "END")) {
+                    end = equalsAscii(dataStart, lineEnd, "VCARD");
+                } else if (!equalsAscii(position, separator, "BEGIN")) {
+                    throw new InputMismatchException();
+                }
+            }
+            position = lineEnd + 1;
+        }
+
+        if (!begin || !end || fullNameStart < 0 || organisationStart < 0) {
+            throw new NoSuchElementException();
+        }
+        return this;
+    }
+
+    private boolean equalsAscii(int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (buffer.get(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWordByte(byte b) {
+        return b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9' || b == '_';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Разбирает значение вида "TYPE=WORK,VOICE:4951234567" - то же, что и регулярное выражение
+     * <code>TYPE=(\w+)\D*(\d{10})</code> в {@link ContactCardImpl}.
+     */
+    private void parsePhone(int start, int end) {
+        if (!(end - start > 5 && equalsAscii(start, start + 5, "TYPE="))) {
+            throw new InputMismatchException();
+        }
+        int typeStart = start + 5;
+        int typeEnd = typeStart;
+        while (typeEnd < end && isWordByte(buffer.get(typeEnd))) {
+            typeEnd++;
+        }
+        int numberStart = typeEnd;
+        while (numberStart < end && !isDigit(buffer.get(numberStart))) {
+            numberStart++;
+        }
+        if (typeEnd == typeStart || end - numberStart != 10) {
+            throw new InputMismatchException();
+        }
+        long number = 0;
+        for (int i = numberStart; i < end; i++) {
+            byte digit = buffer.get(i);
+            if (!isDigit(digit)) {
+                throw new InputMismatchException();
+            }
+            number = number * 10 + (digit - '0');
+        }
+
+        int index = findPhone(typeStart, typeEnd - typeStart);
+        if (index < 0) {
+            if (phoneNumbers == null) {
+                phoneNumbers = new long[4];
+                phoneTypes = new long[4];
+            } else if (phoneCount == phoneNumbers.length) {
+                phoneNumbers = Arrays.copyOf(phoneNumbers, phoneCount * 2);
+                phoneTypes = Arrays.copyOf(phoneTypes, phoneCount * 2);
+            }
+            index = phoneCount++;
+        }
+        phoneNumbers[index] = number;
+        phoneTypes[index] = (long) typeStart << 32 | (typeEnd - typeStart);
+    }
+
+    private int findPhone(int typeStart, int typeLength) {
+        for (int i = 0; i < phoneCount; i++) {
+            int start = (int) (phoneTypes[i] >>> 32);
+            int length = (int) phoneTypes[i];
+            if (length == typeLength) {
+                int j = 0;
+                while (j < length && buffer.get(start + j) == buffer.get(typeStart + j)) {
+                    j++;
+                }
+                if (j == length) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int findPhone(String type) {
+        for (int i = 0; i < phoneCount; i++) {
+            int start = (int) (phoneTypes[i] >>> 32);
+            if (equalsAscii(start, start + (int) phoneTypes[i], type)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int parseNumber(int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            byte digit = buffer.get(i);
+            if (!isDigit(digit)) {
+                throw new InputMismatchException();
+            }
+            result = result * 10 + (digit - '0');
+        }
+        return result;
+    }
+
+    /**
+     * Разбирает дату в формате "DD-MM-YYYY"
+     *
+     * @return номер дня от эпохи
+     */
+    private long parseBirthday(int start, int end) {
+        if (end - start != 10 || buffer.get(start + 2) != '-' || buffer.get(start + 5) != '-') {
+            throw new InputMismatchException();
+        }
+        try {
+            return LocalDate.of(parseNumber(start + 6, end),
+                    parseNumber(start + 3, start + 5),
+                    parseNumber(start, start + 2)).toEpochDay();
+        } catch (DateTimeException exception) {
+            throw new InputMismatchException();
+        }
+    }
+
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private LocalDate checkBirthday() {
+        if (birthday == NO_BIRTHDAY) {
+            throw new NoSuchElementException();
+        }
+        return LocalDate.ofEpochDay(birthday);
+    }
+
+    /**
+     * @return <code>true</code>, если в данных есть поле BDAY
+     */
+    boolean hasBirthday() {
+        return birthday != NO_BIRTHDAY;
+    }
+
+    /**
+     * @return Дата рождения как номер дня от эпохи; имеет смысл, только если {@link #hasBirthday()}
+     */
+    long getBirthdayEpochDay() {
+        return birthday;
+    }
+
+    int getPhoneCount() {
+        return phoneCount;
+    }
+
+    String getPhoneType(int index) {
+        int start = (int) (phoneTypes[index] >>> 32);
+        return decode(start, start + (int) phoneTypes[index]);
+    }
+
+    long getPhoneNumber(int index) {
+        return phoneNumbers[index];
+    }
+
+    /**
+     * @return Полное имя - значение vCard-поля FN: например, "Forrest Gump"
+     */
+    @Override
+    public String getFullName() {
+        if (fullName == null && buffer != null) {
+            fullName = decode(fullNameStart, fullNameEnd);
+        }
+        return fullName;
+    }
+
+    /**
+     * @return Организация - значение vCard-поля ORG: например, "Bubba Gump Shrimp Co."
+     */
+    @Override
+    public String getOrganization() {
+        if (organisation == null && buffer != null) {
+            organisation = decode(organisationStart, organisationEnd);
+        }
+        return organisation;
+    }
+
+    /**
+     * Если поле GENDER отсутствует в данных или равно "M", этот метод возвращает false
+     *
+     * @return true если этот человек женского пола (GENDER:F)
+     */
+    @Override
+    public boolean isWoman() {
+        return gender;
+    }
+
+    /**
+     * @return День рождения человека в виде {@link Calendar}
+     * @throws NoSuchElementException Если поле BDAY отсутствует в данных
+     */
+    @Override
+    public Calendar getBirthday() {
+        LocalDate date = checkBirthday();
+        Calendar result = Calendar.getInstance();
+        result.setTimeInMillis(date.atStartOfDay().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        return result;
+    }
+
+    /**
+     * @return Возраст человека на данный момент в виде {@link Period}
+     * @throws NoSuchElementException Если поле BDAY отсутствует в данных
+     */
+    @Override
+    public Period getAge() {
+        return checkBirthday().until(LocalDate.now());
+    }
+
+    /**
+     * @return Возраст человека в годах: например, 74
+     * @throws NoSuchElementException Если поле BDAY отсутствует в данных
+     */
+    @Override
+    public int getAgeYears() {
+        return checkBirthday().until(LocalDate.now()).getYears();
+    }
+
+    /**
+     * Возвращает номер телефона в зависимости от типа.
+     *
+     * @param type Тип телефона, который содержится в данных между строкой "TEL;TYPE=" и двоеточием
+     * @return Номер телефона - значение vCard-поля TEL, приведенное к следующему виду: "(123) 456-7890"
+     * @throws NoSuchElementException если в данных нет телефона указанного типа
+     */
+    @Override
+    public String getPhone(String type) {
+        int index = type == null ? -1 : findPhone(type);
+        if (index < 0) {
+            throw new NoSuchElementException();
+        }
+        char[] result = "(000) 000-0000".toCharArray();
+        long number = phoneNumbers[index];
+        for (int i = result.length - 1; i >= 0; i--) {
+            if (result[i] == '0') {
+                result[i] = (char) ('0' + number % 10);
+                number /= 10;
+            }
+        }
+        return new String(result);
+    }
+}
@@ -165,6 +165,20 @@ public class ContactCardImpl implements ContactCard {
         return this;
     }
 
+    /**
+     * @return Дата рождения или <code>null</code>, если поле BDAY отсутствует в данных
+     */
+    LocalDate getBirthdayDate() {
+        return birthday;
+    }
+
+    /**
+     * @return Номера телефонов (10 цифр) по типам; пустая карта, если полей TEL нет
+     */
+    Map<String, String> getPhoneNumbers() {
+        return phoneNumbers == null ? Collections.emptyMap() : Collections.unmodifiableMap(phoneNumbers);
+    }
+
     /**
      * @return Полное имя - значение vCard-поля FN: например, "Forrest Gump"
      */
@@ -0,0 +1,483 @@
+package ru.skillbench.tasks.text;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * Колоночное хранилище визитных карточек.<br/>
+ * Вместо множества объектов {@link ContactCardImpl} данные хранятся в массивах примитивов:
+ * имена и организации - как коды в словаре строк, даты рождения - как номер дня от эпохи,
+ * пол - как {@link BitSet}, телефоны - как <code>long</code> с кодом типа.<br/>
+ * Строки хранилища нумеруются с нуля в порядке добавления; {@link #get(int)} возвращает
+ * легковесное представление строки в виде {@link ContactCard}.<br/>
+ * Хранилище не потокобезопасно.
+ */
+public class ContactStore {
+    /**
+     * Значение в колонке дат рождения для карточек без поля BDAY
+     */
+    public static final int NO_BIRTHDAY = Integer.MIN_VALUE;
+
+    private final StringPool strings;
+    private final StringPool phoneTypes;
+    private int size;
+    private int[] fullNames;
+    private int[] organisations;
+    private int[] birthdays;
+    private final BitSet women;
+    /**
+     * Телефоны строки <code>row</code> занимают индексы от phoneOffsets[row] до phoneOffsets[row + 1]
+     */
+    private int[] phoneOffsets;
+    private long[] phoneNumbers;
+    private int[] phoneTypeCodes;
+    private int phoneCount;
+    private final PhoneIndex phoneIndex;
+    /**
+     * Пары (дата рождения, строка), упакованные в long и упорядоченные; строится лениво
+     */
+    private long[] birthdayIndex;
+
+    public ContactStore() {
+        this(16);
+    }
+
+    public ContactStore(int initialCapacity) {
+        initialCapacity = Math.max(initialCapacity, 1);
+        strings = new StringPool();
+        phoneTypes = new StringPool();
+        size = 0;
+        fullNames = new int[initialCapacity];
+        organisations = new int[initialCapacity];
+        birthdays = new int[initialCapacity];
+        women = new BitSet(initialCapacity);
+        phoneOffsets = new int[initialCapacity + 1];
+        phoneNumbers = new long[initialCapacity];
+        phoneTypeCodes = new int[initialCapacity];
+        phoneCount = 0;
+        phoneIndex = new PhoneIndex();
+        birthdayIndex = null;
+    }
+
+    /**
+     * @return Число карточек в хранилище
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Добавляет карточку в хранилище. Телефоны переносятся только из {@link ContactCardImpl}
+     * и {@link ContactCardBufferImpl}, так как {@link ContactCard} не позволяет перечислить типы телефонов;
+     * для других реализаций следует использовать {@link #add(ContactCard, String...)}.
+     *
+     * @param card Разобранная карточка
+     * @return Номер строки, под которым карточка сохранена
+     */
+    public int add(ContactCard card) {
+        int row = addRow(card);
+        if (card instanceof ContactCardImpl) {
+            for (Map.Entry<String, String> phone : ((ContactCardImpl) card).getPhoneNumbers().entrySet()) {
+                addPhone(row, phone.getKey(), Long.parseLong(phone.getValue()));
+            }
+        } else if (card instanceof ContactCardBufferImpl) {
+            ContactCardBufferImpl bufferCard = (ContactCardBufferImpl) card;
+            for (int i = 0; i < bufferCard.getPhoneCount(); i++) {
+                addPhone(row, bufferCard.getPhoneType(i), bufferCard.getPhoneNumber(i));
+            }
+        }
+        return finishRow(row);
+    }
+
+    /**
+     * Добавляет карточку в хранилище, перенося телефоны только перечисленных типов.
+     *
+     * @param card       Разобранная карточка
+     * @param phoneTypes Типы телефонов, которые следует запросить через {@link ContactCard#getPhone(String)}
+     * @return Номер строки, под которым карточка сохранена
+     */
+    public int add(ContactCard card, String... phoneTypes) {
+        int row = addRow(card);
+        for (String type : phoneTypes) {
+            try {
+                addPhone(row, type, parsePhone(card.getPhone(type)));
+            } catch (NoSuchElementException ignored) {
+            }
+        }
+        return finishRow(row);
+    }
+
+    private int addRow(ContactCard card) {
+        if (size == fullNames.length) {
+            int capacity = size * 2;
+            fullNames = Arrays.copyOf(fullNames, capacity);
+            organisations = Arrays.copyOf(organisations, capacity);
+            birthdays = Arrays.copyOf(birthdays, capacity);
+            phoneOffsets = Arrays.copyOf(phoneOffsets, capacity + 1);
+        }
+        int row = size;
+        fullNames[row] = strings.encode(card.getFullName());
+        organisations[row] = strings.encode(card.getOrganization());
+        birthdays[row] = birthdayOf(card);
+        women.set(row, card.isWoman());
+        phoneOffsets[row] = phoneCount;
+        return row;
+    }
+
+    private int finishRow(int row) {
+        phoneOffsets[row + 1] = phoneCount;
+        size++;
+        birthdayIndex = null;
+        return row;
+    }
+
+    /**
+     * @return Дата рождения карточки как номер дня от эпохи или {@link #NO_BIRTHDAY}
+     */
+    static int birthdayOf(ContactCard card) {
+        if (card instanceof ContactCardImpl) {
+            LocalDate birthday = ((ContactCardImpl) card).getBirthdayDate();
+            return birthday == null ? NO_BIRTHDAY : (int) birthday.toEpochDay();
+        }
+        if (card instanceof ContactCardBufferImpl) {
+            ContactCardBufferImpl bufferCard = (ContactCardBufferImpl) card;
+            return bufferCard.hasBirthday() ? (int) bufferCard.getBirthdayEpochDay() : NO_BIRTHDAY;
+        }
+        try {
+            Calendar birthday = card.getBirthday();
+            return (int) birthday.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+        } catch (NoSuchElementException e) {
+            return NO_BIRTHDAY;
+        }
+    }
+
+    private void addPhone(int row, String type, long number) {
+        if (phoneCount == phoneNumbers.length) {
+            phoneNumbers = Arrays.copyOf(phoneNumbers, phoneCount * 2);
+            phoneTypeCodes = Arrays.copyOf(phoneTypeCodes, phoneCount * 2);
+        }
+        int typeCode = phoneTypes.encode(type);
+        for (int i = phoneOffsets[row]; i < phoneCount; i++) {
+            if (phoneTypeCodes[i] == typeCode) {
+                phoneIndex.remove(phoneNumbers[i], row);
+                phoneNumbers[i] = number;
+                phoneIndex.add(number, row);
+                return;
+            }
+        }
+        phoneNumbers[phoneCount] = number;
+        phoneTypeCodes[phoneCount] = typeCode;
+        phoneCount++;
+        phoneIndex.add(number, row);
+    }
+
+    /**
+     * Извлекает цифры номера, например, из строки вида "(123) 456-7890".
+     */
+    static long parsePhone(CharSequence phone) {
+        long result = 0;
+        int digits = 0;
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                result = result * 10 + (c - '0');
+                digits++;
+            }
+        }
+        if (digits == 0 || digits > 18) {
+            throw new IllegalArgumentException(phone.toString());
+        }
+        return result;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row: " + row + ", size: " + size);
+        }
+    }
+
+    /**
+     * @param row Номер строки
+     * @return Легковесное представление строки хранилища, не копирующее данные
+     * @throws IndexOutOfBoundsException если строки с таким номером нет
+     */
+    public ContactCard get(int row) {
+        checkRow(row);
+        return new Row(row);
+    }
+
+    /**
+     * @param row Номер строки
+     * @return Дата рождения как номер дня от эпохи или {@link #NO_BIRTHDAY}
+     */
+    public int getBirthdayEpochDay(int row) {
+        checkRow(row);
+        return birthdays[row];
+    }
+
+    /**
+     * Ищет карточки по номеру телефона любого типа.
+     *
+     * @param phone Номер телефона: 10 цифр, возможно, с разделителями, например "(123) 456-7890"
+     * @return Номера строк в порядке добавления (пустой массив, если ничего не найдено)
+     */
+    public int[] findByPhone(String phone) {
+        return findByPhone(parsePhone(phone));
+    }
+
+    /**
+     * @param phone Номер телефона как число
+     * @return Номера строк в порядке добавления (пустой массив, если ничего не найдено)
+     */
+    public int[] findByPhone(long phone) {
+        return phoneIndex.get(phone);
+    }
+
+    /**
+     * Ищет карточки с датой рождения в заданном диапазоне (включительно).
+     * Первый вызов после добавления карточек сортирует индекс дат за O(n log n),
+     * последующие выполняются за O(log n + k).
+     *
+     * @return Номера строк, упорядоченные по дате рождения (при равных датах - по номеру строки)
+     */
+    public int[] findByBirthday(LocalDate from, LocalDate to) {
+        long[] index = getBirthdayIndex();
+        int start = lowerBound(index, from.toEpochDay() << 32);
+        int end = lowerBound(index, (to.toEpochDay() + 1) << 32);
+        int[] result = new int[Math.max(end - start, 0)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (int) index[start + i];
+        }
+        return result;
+    }
+
+    private long[] getBirthdayIndex() {
+        if (birthdayIndex == null) {
+            int count = 0;
+            long[] index = new long[size];
+            for (int row = 0; row < size; row++) {
+                if (birthdays[row] != NO_BIRTHDAY) {
+                    index[count++] = (long) birthdays[row] << 32 | row;
+                }
+            }
+            index = Arrays.copyOf(index, count);
+            Arrays.sort(index);
+            birthdayIndex = index;
+        }
+        return birthdayIndex;
+    }
+
+    private static int lowerBound(long[] array, long key) {
+        int low = 0;
+        int high = array.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (array[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Словарь строк: каждой различной строке сопоставляется код - индекс в списке.
+     */
+    private static class StringPool {
+        private final HashMap<String, Integer> codes = new HashMap<>();
+        private final ArrayList<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        int find(String value) {
+            Integer code = value == null ? null : codes.get(value);
+            return code == null ? -1 : code;
+        }
+
+        String decode(int code) {
+            return code < 0 ? null : values.get(code);
+        }
+    }
+
+    /**
+     * Инвертированный индекс "номер телефона - строки" с открытой адресацией.
+     * Для каждого номера хранится отсортированный массив строк.
+     */
+    private static class PhoneIndex {
+        private static final int[] EMPTY = new int[0];
+
+        private long[] keys = new long[16];
+        private int[][] rows = new int[16][];
+        private int count = 0;
+
+        private int slot(long key) {
+            int mask = keys.length - 1;
+            int hash = Long.hashCode(key) * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (rows[slot] != null && keys[slot] != key) {
+                slot = slot + 1 & mask;
+            }
+            return slot;
+        }
+
+        int[] get(long key) {
+            int[] result = rows[slot(key)];
+            return result == null ? EMPTY : result.clone();
+        }
+
+        void add(long key, int row) {
+            int slot = slot(key);
+            int[] current = rows[slot];
+            if (current == null) {
+                keys[slot] = key;
+                rows[slot] = new int[]{row};
+                if (++count * 2 > keys.length) {
+                    grow();
+                }
+            } else {
+                // список может быть пустым после remove и должен оставаться упорядоченным для binarySearch
+                int position = Arrays.binarySearch(current, row);
+                if (position < 0) {
+                    position = -position - 1;
+                    int[] updated = new int[current.length + 1];
+                    System.arraycopy(current, 0, updated, 0, position);
+                    updated[position] = row;
+                    System.arraycopy(current, position, updated, position + 1, current.length - position);
+                    rows[slot] = updated;
+                }
+            }
+        }
+
+        /**
+         * Удаляет строку из списка номера; сам ключ остается в таблице (возможно, с пустым списком),
+         * чтобы не нарушать цепочки открытой адресации.
+         */
+        void remove(long key, int row) {
+            int slot = slot(key);
+            int[] current = rows[slot];
+            if (current != null) {
+                int position = Arrays.binarySearch(current, row);
+                if (position >= 0) {
+                    int[] updated = new int[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, position);
+                    System.arraycopy(current, position + 1, updated, position, updated.length - position);
+                    rows[slot] = updated;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[][] oldRows = rows;
+            keys = new long[oldKeys.length * 2];
+            rows = new int[oldRows.length * 2][];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldRows[i] != null) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    rows[slot] = oldRows[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Представление одной строки хранилища. Методы getInstance создают новый {@link ContactCardImpl}:
+     * строки хранилища создаются только методом {@link ContactStore#add(ContactCard)}.
+     */
+    private class Row implements ContactCard {
+        private final int row;
+
+        Row(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public ContactCard getInstance(Scanner scanner) {
+            return new ContactCardImpl().getInstance(scanner);
+        }
+
+        @Override
+        public ContactCard getInstance(String data) {
+            return new ContactCardImpl().getInstance(data);
+        }
+
+        @Override
+        public String getFullName() {
+            return strings.decode(fullNames[row]);
+        }
+
+        @Override
+        public String getOrganization() {
+            return strings.decode(organisations[row]);
+        }
+
+        @Override
+        public boolean isWoman() {
+            return women.get(row);
+        }
+
+        private LocalDate birthday() {
+            if (birthdays[row] == NO_BIRTHDAY) {
+                throw new NoSuchElementException();
+            }
+            return LocalDate.ofEpochDay(birthdays[row]);
+        }
+
+        @Override
+        public Calendar getBirthday() {
+            Calendar result = Calendar.getInstance();
+            result.setTimeInMillis(birthday().atStartOfDay().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            return result;
+        }
+
+        @Override
+        public Period getAge() {
+            return birthday().until(LocalDate.now());
+        }
+
+        @Override
+        public int getAgeYears() {
+            return birthday().until(LocalDate.now()).getYears();
+        }
+
+        @Override
+        public String getPhone(String type) {
+            int typeCode = phoneTypes.find(type);
+            for (int i = phoneOffsets[row]; typeCode >= 0 && i < phoneOffsets[row + 1]; i++) {
+                if (phoneTypeCodes[i] == typeCode) {
+                    StringBuilder result = new StringBuilder(String.format("%010d", phoneNumbers[i]));
+                    result.insert(0, '(').insert(4, ") ").insert(9, '-');
+                    return result.toString();
+                }
+            }
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public String toString() {
+            return "ContactStore.Row[" + row + "]";
+        }
+    }
+}
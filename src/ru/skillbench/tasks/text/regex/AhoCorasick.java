@@ -0,0 +1,193 @@
+package ru.skillbench.tasks.text.regex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Автомат Ахо-Корасик для одновременного поиска нескольких строк за один проход по тексту.<br/>
+ * Для символов ASCII переходы хранятся в полной таблице (как в ДКА), для остальных -
+ * в хэш-таблице с переходом по суффиксным ссылкам.
+ */
+class AhoCorasick {
+    /**
+     * Получатель найденных вхождений
+     */
+    interface Listener {
+        /**
+         * @param keyword Индекс строки в списке, переданном конструктору
+         * @param start   Начало вхождения
+         * @param end     Конец вхождения (не включительно)
+         */
+        void onMatch(int keyword, int start, int end);
+    }
+
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final int[] lengths;
+    private final boolean ignoreAsciiCase;
+    private int[][] ascii;
+    private final HashMap<Long, Integer> other;
+    private int[] failure;
+    private int[][] outputs;
+
+    /**
+     * @param keywords        Непустые строки для поиска (могут повторяться)
+     * @param ignoreAsciiCase <code>true</code> - латинские буквы сравниваются без учета регистра
+     * @throws IllegalArgumentException если среди строк есть пустая
+     */
+    AhoCorasick(List<String> keywords, boolean ignoreAsciiCase) {
+        this.ignoreAsciiCase = ignoreAsciiCase;
+        this.lengths = new int[keywords.size()];
+        this.other = new HashMap<>();
+        ArrayList<int[]> asciiRows = new ArrayList<>();
+        ArrayList<int[]> outputRows = new ArrayList<>();
+        asciiRows.add(newRow());
+        outputRows.add(NO_OUTPUT);
+
+        for (int k = 0; k < keywords.size(); k++) {
+            String keyword = keywords.get(k);
+            if (keyword.isEmpty()) {
+                throw new IllegalArgumentException("empty keyword");
+            }
+            lengths[k] = keyword.length();
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = fold(keyword.charAt(i));
+                int next = c < 128 ? asciiRows.get(state)[c] : other.getOrDefault(key(state, c), -1);
+                if (next < 0) {
+                    next = asciiRows.size();
+                    asciiRows.add(newRow());
+                    outputRows.add(NO_OUTPUT);
+                    if (c < 128) {
+                        asciiRows.get(state)[c] = next;
+                    } else {
+                        other.put(key(state, c), next);
+                    }
+                }
+                state = next;
+            }
+            outputRows.set(state, append(outputRows.get(state), k));
+        }
+
+        ascii = asciiRows.toArray(new int[0][]);
+        outputs = outputRows.toArray(new int[0][]);
+        buildFailureLinks();
+    }
+
+    private static int[] newRow() {
+        int[] row = new int[128];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private static long key(int state, char c) {
+        return (long) state << 16 | c;
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+
+    private char fold(char c) {
+        return ignoreAsciiCase && c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Обход в ширину: суффиксные ссылки, объединение выходов и достройка ASCII-переходов до полной таблицы.
+     */
+    private void buildFailureLinks() {
+        failure = new int[ascii.length];
+        HashMap<Integer, List<Long>> otherEdges = new HashMap<>();
+        for (Long edge : other.keySet()) {
+            otherEdges.computeIfAbsent((int) (edge >>> 16), state -> new ArrayList<>()).add(edge);
+        }
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < 128; c++) {
+            if (ascii[0][c] < 0) {
+                ascii[0][c] = 0;
+            } else {
+                failure[ascii[0][c]] = 0;
+                queue.add(ascii[0][c]);
+            }
+        }
+        for (Long edge : otherEdges.getOrDefault(0, new ArrayList<>())) {
+            failure[other.get(edge)] = 0;
+            queue.add(other.get(edge));
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] = merge(outputs[state], outputs[failure[state]]);
+            for (int c = 0; c < 128; c++) {
+                int next = ascii[state][c];
+                if (next < 0) {
+                    ascii[state][c] = ascii[failure[state]][c];
+                } else {
+                    failure[next] = ascii[failure[state]][c];
+                    queue.add(next);
+                }
+            }
+            for (Long edge : otherEdges.getOrDefault(state, new ArrayList<>())) {
+                int next = other.get(edge);
+                failure[next] = nextOther(failure[state], (char) (edge & 0xFFFF));
+                queue.add(next);
+            }
+        }
+    }
+
+    private static int[] merge(int[] own, int[] inherited) {
+        if (inherited.length == 0) {
+            return own;
+        }
+        int[] result = Arrays.copyOf(own, own.length + inherited.length);
+        System.arraycopy(inherited, 0, result, own.length, inherited.length);
+        return result;
+    }
+
+    private int nextOther(int state, char c) {
+        while (true) {
+            Integer next = other.get(key(state, c));
+            if (next != null) {
+                return next;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = failure[state];
+        }
+    }
+
+    /**
+     * @return Длина строки с индексом <code>keyword</code>
+     */
+    int length(int keyword) {
+        return lengths[keyword];
+    }
+
+    /**
+     * Сообщает о всех (в т.ч. перекрывающихся) вхождениях строк в <code>text</code>
+     * в порядке возрастания их конца; при равном конце - сначала более длинные.
+     */
+    void scan(CharSequence text, Listener listener) {
+        scan(text, 0, text.length(), listener);
+    }
+
+    /**
+     * То же, что {@link #scan(CharSequence, Listener)}, но только для вхождений внутри [from, to).
+     */
+    void scan(CharSequence text, int from, int to, Listener listener) {
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            char c = fold(text.charAt(i));
+            state = c < 128 ? ascii[state][c] : nextOther(state, c);
+            int[] output = outputs[state];
+            for (int keyword : output) {
+                listener.onMatch(keyword, i + 1 - lengths[keyword], i + 1);
+            }
+        }
+    }
+}
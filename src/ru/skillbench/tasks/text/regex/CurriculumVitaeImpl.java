@@ -1,32 +1,171 @@
 package ru.skillbench.tasks.text.regex;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Реализация {@link CurriculumVitae}, которую можно читать из нескольких потоков одновременно.<br/>
+ * Методы, меняющие текст, синхронизированы и увеличивают номер версии текста. Результаты анализа
+ * (текст целиком, имя и телефоны) хранятся в неизменяемом снимке {@link Snapshot} для текущей версии,
+ * который публикуется через volatile-ссылку, поэтому методы чтения не берут блокировку, пока текст не меняется.
+ */
 public class CurriculumVitaeImpl implements CurriculumVitae {
-    private StringBuilder text;
-    private ArrayList<Phone> phoneNumbers;
-    private String fullName;
-    private String firstName;
-    private String middleName;
-    private String lastName;
-    private final HashMap<String, String> hiddenParts;
+    private static final Pattern FULL_NAME_PATTERN = Pattern.compile("[A-Z][a-z]*[a-z.]( [A-Z][a-z]*[a-z.]){1,2}");
+
+    private PieceTable text;
+    /**
+     * Номер версии текста; меняется только под блокировкой <code>this</code>
+     */
+    private volatile long version;
+    private volatile Snapshot snapshot;
+    /**
+     * Журнал скрытых кусков в порядке их положения в тексте
+     */
+    private final ArrayList<HiddenPart> journal;
+    private volatile Consumer<String> debugListener;
     //private static final String PHONE_PATTERN =
     //"(?<code>(?:\\()?([1-9][0-9]{2}(?:\\())[-. ]*)?([1-9][0-9]{2})[-. ]*(\\d{2})[-. ]*(\\d{2})(\\s*ext\\.?\\s*([0-9]+))?";
 
     public CurriculumVitaeImpl() {
         text = null;
-        phoneNumbers = new ArrayList<>();
-        fullName = null;
-        firstName = null;
-        middleName = null;
-        lastName = null;
-        hiddenParts = new HashMap<>();
+        version = 0;
+        snapshot = null;
+        journal = new ArrayList<>();
+        debugListener = null;
+    }
+
+    /**
+     * @param debugListener Получатель отладочных сообщений или <code>null</code>, чтобы их не формировать
+     */
+    public void setDebugListener(Consumer<String> debugListener) {
+        this.debugListener = debugListener;
+    }
+
+    private void debug(Supplier<String> message) {
+        Consumer<String> listener = debugListener;
+        if (listener != null) {
+            listener.accept(message.get());
+        }
+    }
+
+    /**
+     * Неизменяемый снимок текста одной версии с лениво вычисляемыми результатами анализа.
+     * Результаты однозначно определяются текстом, поэтому одновременное вычисление в нескольких потоках безопасно.
+     */
+    private static final class Snapshot {
+        private final long version;
+        private final String text;
+        private volatile Names names;
+        private volatile List<Phone> phones;
+
+        Snapshot(long version, String text) {
+            this.version = version;
+            this.text = text;
+        }
+
+        Names names() {
+            Names result = names;
+            if (result == null) {
+                result = new Names(text);
+                names = result;
+            }
+            return result;
+        }
+
+        List<Phone> phones() {
+            List<Phone> result = phones;
+            if (result == null) {
+                result = Collections.unmodifiableList(PhoneScanner.findAll(text));
+                phones = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Полное имя и его части, найденные за один проход
+     */
+    private static final class Names {
+        /**
+         * <code>null</code>, если в тексте нет полного имени
+         */
+        private final String fullName;
+        private final int fullNameStart;
+        private final String firstName;
+        private final String middleName;
+        private final String lastName;
+
+        Names(String text) {
+            Matcher matcher = FULL_NAME_PATTERN.matcher(text);
+            if (!matcher.find()) {
+                fullName = null;
+                fullNameStart = -1;
+                firstName = null;
+                middleName = null;
+                lastName = null;
+                return;
+            }
+            fullName = matcher.group();
+            fullNameStart = matcher.start();
+            int first = fullName.indexOf(' ');
+            int last = fullName.lastIndexOf(' ');
+            firstName = fullName.substring(0, first);
+            middleName = first == last ? null : fullName.substring(first + 1, last);
+            lastName = fullName.substring(last + 1);
+        }
+
+        Names check() {
+            if (fullName == null) {
+                throw new NoSuchElementException();
+            }
+            return this;
+        }
+    }
+
+    /**
+     * @return Снимок текущей версии текста
+     * @throws IllegalStateException Если текст резюме не был задан
+     */
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null && current.version == version) {
+            return current;
+        }
+        synchronized (this) {
+            checkStateException();
+            current = snapshot;
+            if (current == null || current.version != version) {
+                current = new Snapshot(version, text.toString());
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Скрытый кусок текста: маска той же длины, что и исходный кусок, начинается в позиции <code>offset</code>
+     */
+    private static final class HiddenPart {
+        private int offset;
+        private final String original;
+
+        HiddenPart(int offset, String original) {
+            this.offset = offset;
+            this.original = original;
+        }
+
+        int end() {
+            return offset + original.length();
+        }
     }
 
     /**
@@ -47,13 +186,60 @@ public class CurriculumVitaeImpl implements CurriculumVitae {
      * @param text Текст резюме
      */
     @Override
-    public void setText(String text) {
-        this.text = new StringBuilder(text);
-        fullName = null;
-        firstName = null;
-        middleName = null;
-        lastName = null;
-        phoneNumbers = new ArrayList<>();
+    public synchronized void setText(String text) {
+        this.text = new PieceTable(text);
+        journal.clear();
+        textChanged();
+    }
+
+    /**
+     * Делает устаревшими результаты анализа текста после его изменения.
+     */
+    private void textChanged() {
+        version++;
+    }
+
+    /**
+     * Заменяет в тексте резюме все вхождения строки <code>target</code> (слева направо, без перекрытий,
+     * как {@link Matcher#replaceAll(String)}) на <code>replacement</code>. Вхождения ищутся в тексте снимка
+     * текущей версии (его же вернет {@link #getText()}), каждая замена - правка {@link PieceTable} за O(log n);
+     * замены выполняются с конца, чтобы не сдвигать еще не замененные вхождения.
+     *
+     * @return Число замен
+     */
+    private int replaceAll(String target, String replacement) {
+        if (target.isEmpty()) {
+            return 0;
+        }
+        String current = snapshot().text;
+        ArrayList<Integer> positions = new ArrayList<>();
+        for (int i = current.indexOf(target); i >= 0; i = current.indexOf(target, i + target.length())) {
+            positions.add(i);
+        }
+        for (int i = positions.size() - 1; i >= 0; i--) {
+            splice(positions.get(i), positions.get(i) + target.length(), replacement);
+        }
+        return positions.size();
+    }
+
+    /**
+     * Заменяет символы [start, end) текста резюме на <code>replacement</code> и сдвигает положения скрытых кусков,
+     * расположенных после замененного участка. Скрытые куски, которые затронула замена, забываются.
+     */
+    private void splice(int start, int end, String replacement) {
+        text.replace(start, end, replacement);
+        int delta = replacement.length() - (end - start);
+        for (int i = journal.size() - 1; i >= 0; i--) {
+            HiddenPart part = journal.get(i);
+            if (part.offset >= end) {
+                part.offset += delta;
+            } else if (part.end() > start) {
+                debug(() -> "forget hidden [" + part.offset + ", " + part.end() + ") overwritten by edit");
+                journal.remove(i);
+            } else {
+                break;
+            }
+        }
     }
 
     /**
@@ -64,32 +250,25 @@ public class CurriculumVitaeImpl implements CurriculumVitae {
      */
     @Override
     public String getText() {
-        checkStateException();
-        return text.toString();
+        return snapshot().text;
     }
 
     /**
      * Возвращает список телефонов в том же порядке, в котором они расположены в самом резюме.<br/>
      * О реализации: используйте {@link #PHONE_PATTERN} для поиска телефонов;
      * используйте группы этого регулярного выражения, чтобы извлечь код региона и extension из найденных номеров;
-     * если код региона или extension не присутствует в номере, объект {@link Phone} должен хранить отрицательное значение.
+     * если код региона или extension не присутствует в номере, объект {@link Phone} должен хранить отрицательное значение.<br/>
+     * Телефоны ищутся {@link PhoneScanner}, который распознает ту же грамматику без регулярных выражений.
      *
-     * @return Список, который не может быть <code>null</code>, но может быть пустым (если ни одного телефона не найдено).
+     * @return Неизменяемый список, который не может быть <code>null</code>, но может быть пустым (если ни одного телефона не найдено).
      * @throws IllegalStateException Если текст резюме не был задан путем вызова {@link #setText(String)}.
      * @see Phone
      */
     @Override
     public List<Phone> getPhones() {
-        checkStateException();
-        if (phoneNumbers.isEmpty()) {
-            Pattern pattern = Pattern.compile(PHONE_PATTERN);
-            Matcher matcher = pattern.matcher(text);
-            while (matcher.find()) {
-                phoneNumbers.add(new Phone(matcher.group()));
-            }
-        }
-        System.out.println(phoneNumbers.toString());
-        return phoneNumbers;
+        List<Phone> phones = snapshot().phones();
+        debug(phones::toString);
+        return phones;
     }
 
     /**
@@ -108,17 +287,7 @@ public class CurriculumVitaeImpl implements CurriculumVitae {
      */
     @Override
     public String getFullName() {
-        checkStateException();
-        if (fullName == null) {
-            Pattern pattern = Pattern.compile("[A-Z][a-z]*[a-z.]( [A-Z][a-z]*[a-z.]){1,2}");
-            Matcher matcher = pattern.matcher(text);
-            if (matcher.find()) {
-                fullName = matcher.group();
-            } else {
-                throw new NoSuchElementException();
-            }
-        }
-        return fullName;
+        return snapshot().names().check().fullName;
     }
 
     /**
@@ -129,24 +298,7 @@ public class CurriculumVitaeImpl implements CurriculumVitae {
      */
     @Override
     public String getFirstName() {
-        checkStateException();
-        if (firstName == null) {
-            if (fullName == null) {
-                getFullName();
-            }
-            Pattern pattern = Pattern.compile("^(?<firstName>[A-Z][a-z]*[a-z.])" +
-                    "((?: )(?<middleName>[A-Z][a-z]*[a-z.]))?" +
-                    "(?: )(?<lastName>[A-Z][a-z]*[a-z.])$");
-            Matcher matcher = pattern.matcher(fullName);
-            if (matcher.find()) {
-                firstName = matcher.group("firstName");
-                middleName = matcher.group("firstName");
-                lastName = matcher.group("firstName");
-            } else {
-                firstName = null;
-            }
-        }
-        return firstName;
+        return snapshot().names().check().firstName;
     }
 
     /**
@@ -158,24 +310,7 @@ public class CurriculumVitaeImpl implements CurriculumVitae {
      */
     @Override
     public String getMiddleName() {
-        checkStateException();
-        if (middleName == null) {
-            if (fullName == null) {
-                getFullName();
-            }
-            Pattern pattern = Pattern.compile("(?<firstName>[A-Z][a-z]*[a-z.])" +
-                    "(?: )(?<middleName>[A-Z][a-z]*[a-z.])" +
-                    "(?: )(?<lastName>[A-Z][a-z]*[a-z.])$");
-            Matcher matcher = pattern.matcher(fullName);
-            if (matcher.find()) {
-                firstName = matcher.group("firstName");
-                middleName = matcher.group("middleName");
-                lastName = matcher.group("lastName");
-            } else {
-                middleName = null;
-            }
-        }
-        return middleName;
+        return snapshot().names().check().middleName;
     }
 
     /**
@@ -186,24 +321,7 @@ public class CurriculumVitaeImpl implements CurriculumVitae {
      */
     @Override
     public String getLastName() {
-        checkStateException();
-        if (lastName == null) {
-            if (fullName == null) {
-                getFullName();
-            }
-            Pattern pattern = Pattern.compile("(?<firstName>[A-Z][a-z]*[a-z.])" +
-                    "((?: )(?<middleName>[A-Z][a-z]*[a-z.]))?" +
-                    "(?: )(?<lastName>[A-Z][a-z]*[a-z.])$");
-            Matcher matcher = pattern.matcher(fullName);
-            if (matcher.find()) {
-                firstName = matcher.group("firstName");
-                middleName = matcher.group("middleName");
-                lastName = matcher.group("lastName");
-            } else {
-                lastName = null;
-            }
-        }
-        return lastName;
+        return snapshot().names().check().lastName;
     }
 
     /**
@@ -215,12 +333,11 @@ public class CurriculumVitaeImpl implements CurriculumVitae {
      * @see #getLastName()
      */
     @Override
-    public void updateLastName(String newLastName) {
-        checkStateException();
-        Pattern pattern = Pattern.compile(getLastName());
-        Matcher matcher = pattern.matcher(text);
-        text = new StringBuilder(matcher.replaceFirst(newLastName));
-        lastName = newLastName;
+    public synchronized void updateLastName(String newLastName) {
+        Names names = snapshot().names().check();
+        int end = names.fullNameStart + names.fullName.length();
+        splice(end - names.lastName.length(), end, newLastName);
+        textChanged();
     }
 
     /**
@@ -234,18 +351,12 @@ public class CurriculumVitaeImpl implements CurriculumVitae {
      * @throws IllegalStateException    Если текст резюме не был задан путем вызова {@link #setText(String)}.
      */
     @Override
-    public void updatePhone(Phone oldPhone, Phone newPhone) {
+    public synchronized void updatePhone(Phone oldPhone, Phone newPhone) {
         checkStateException();
-        Pattern pattern = Pattern.compile(oldPhone.getNumber());
-        Matcher matcher = pattern.matcher(text);
-        if (!matcher.find()) {
+        if (replaceAll(oldPhone.getNumber(), newPhone.getNumber()) == 0) {
             throw new IllegalArgumentException();
         }
-        setText(matcher.replaceAll(newPhone.getNumber()));
-    }
-
-    String removeParenthesises(String oldString) {
-        return oldString.replaceAll("[(]", "[(]").replaceAll("[)]", "[)]");
+        textChanged();
     }
 
     /**
@@ -260,16 +371,41 @@ public class CurriculumVitaeImpl implements CurriculumVitae {
      * @throws IllegalStateException    Если текст резюме не был задан путем вызова {@link #setText(String)}.
      */
     @Override
-    public void hide(String piece) {
+    public synchronized void hide(String piece) {
         checkStateException();
-        Pattern pattern = Pattern.compile(removeParenthesises(piece));
-        Matcher matcher = pattern.matcher(text);
-        if (!matcher.find()) {
-            throw new IllegalArgumentException();
-        }
-        String hider = piece.replaceAll("[^ ,.@]", "X");
-        setText(matcher.replaceAll(hider));
-        hiddenParts.put(hider, piece);
+        hide(Collections.singletonList(piece), false);
+    }
+
+    /**
+     * Скрывает сразу все куски <code>pieces</code> так же, как {@link #hide(String)}, но за один проход по тексту
+     * (автоматом Ахо-Корасик).<br/>
+     * Если вхождения кусков перекрываются, скрывается то, что начинается раньше (при равном начале - более длинное).
+     *
+     * @param pieces Не может быть null и содержать null или пустые строки
+     * @return Число скрытых вхождений
+     * @throws IllegalArgumentException Если резюме не содержит текста, равного одному из <code>pieces</code>
+     *                                  (в этом случае текст не меняется).
+     * @throws IllegalStateException    Если текст резюме не был задан путем вызова {@link #setText(String)}.
+     */
+    public synchronized int hideAll(Collection<String> pieces) {
+        checkStateException();
+        return hide(pieces, false);
+    }
+
+    /**
+     * Скрывает сразу все телефоны <code>phones</code> так же, как {@link #hidePhone(String)}, но за один проход по тексту.<br/>
+     * Номер, входящий в более длинный номер (например, "123-45-67" и "(495)123-45-67 ext 12"), скрывается там,
+     * где он встречается отдельно, а внутри длинного номера скрывается длинный номер.
+     *
+     * @param phones Не может быть null и содержать null или пустые строки
+     * @return Число скрытых вхождений
+     * @throws IllegalArgumentException Если резюме не содержит текста, равного одному из <code>phones</code>
+     *                                  (в этом случае текст не меняется).
+     * @throws IllegalStateException    Если текст резюме не был задан путем вызова {@link #setText(String)}.
+     */
+    public synchronized int hidePhones(Collection<String> phones) {
+        checkStateException();
+        return hide(phones, true);
     }
 
     /**
@@ -283,44 +419,99 @@ public class CurriculumVitaeImpl implements CurriculumVitae {
      * @throws IllegalStateException    Если текст резюме не был задан путем вызова {@link #setText(String)}.
      */
     @Override
-    public void hidePhone(String phone) {
+    public synchronized void hidePhone(String phone) {
         checkStateException();
-        Pattern pattern = Pattern.compile(removeParenthesises(phone));
-        Matcher matcher = pattern.matcher(text);
-        if (!matcher.find()) {
-            throw new IllegalArgumentException();
+        hide(Collections.singletonList(phone), true);
+    }
+
+    /**
+     * Скрывает все вхождения кусков и записывает их в журнал {@link #journal}.
+     * Вхождения, перекрывающиеся с уже скрытыми кусками, пропускаются. Каждое вхождение заменяется маской
+     * той же длины правкой {@link PieceTable}, поэтому остальной текст не копируется.
+     *
+     * @param phone <code>true</code> - скрываются только цифры (как в {@link #hidePhone(String)}),
+     *              иначе - все символы, кроме ' ', ',', '.' и '@' (как в {@link #hide(String)})
+     * @return Число скрытых вхождений
+     */
+    private int hide(Collection<String> pieces, boolean phone) {
+        ArrayList<String> keywords = new ArrayList<>(new LinkedHashSet<>(pieces));
+        if (keywords.isEmpty()) {
+            return 0;
+        }
+        String current = snapshot().text;
+        AhoCorasick automaton = new AhoCorasick(keywords, false);
+        boolean[] found = new boolean[keywords.size()];
+        // длина самого длинного куска, начинающегося в каждой позиции
+        int[] longest = new int[current.length()];
+        automaton.scan(current, (keyword, start, end) -> {
+            found[keyword] = true;
+            longest[start] = Math.max(longest[start], end - start);
+        });
+        for (boolean present : found) {
+            if (!present) {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        ArrayList<HiddenPart> hidden = new ArrayList<>();
+        int next = 0;
+        for (int i = 0; i < longest.length; ) {
+            while (next < journal.size() && journal.get(next).end() <= i) {
+                next++;
+            }
+            if (longest[i] == 0 || next < journal.size() && journal.get(next).offset < i + longest[i]) {
+                i++;
+                continue;
+            }
+            HiddenPart part = new HiddenPart(i, current.substring(i, i + longest[i]));
+            text.replace(part.offset, part.end(), mask(part.original, phone));
+            hidden.add(part);
+            i = part.end();
+        }
+        if (!hidden.isEmpty()) {
+            journal.addAll(hidden);
+            journal.sort(Comparator.comparingInt(part -> part.offset));
+            textChanged();
         }
-        String hider = phone.replaceAll("\\d", "X");
-        setText(matcher.replaceAll(hider));
-        hiddenParts.put(hider, phone);
+        return hidden.size();
     }
 
     /**
-     * Отменяет все изменения, сделанные методами {@link #hide(String)} и {@link #hidePhone(String)},
-     * т.е. заменяет куски текста с символами 'X' в текущем тексте резюме (скрытые куски, вставленные ранее)
-     * на соответствующие куски из исходного текста резюме.<br/>
-     * Примечание: в резюме не может быть двух (или более) одинаковых скрытых кусков (одинаковых куско с 'X').<br/>
-     * О реализации: исходные и скрытые куски следует хранить в некой коллекции.
-     * Кроме того, эта коллекция должна очищаться при вызове {@link #setText(String)}.
+     * @return Кусок <code>piece</code>, в котором символы заменены на 'X' так же, как в {@link #hide(Collection, boolean)}
+     */
+    private static String mask(String piece, boolean phone) {
+        char[] chars = piece.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (phone ? chars[i] >= '0' && chars[i] <= '9' : " ,.@".indexOf(chars[i]) < 0) {
+                chars[i] = 'X';
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Отменяет все изменения, сделанные методами {@link #hide(String)}, {@link #hidePhone(String)}
+     * и {@link #hideAll(Collection)}, т.е. заменяет куски текста с символами 'X' в текущем тексте резюме
+     * (скрытые куски, вставленные ранее) на соответствующие куски из исходного текста резюме.<br/>
+     * О реализации: скрытые куски хранятся в журнале вместе с их положением в тексте, которое поддерживается
+     * при последующих изменениях текста, поэтому каждый кусок восстанавливается по месту правкой {@link PieceTable},
+     * даже если их маски совпадают. Журнал очищается при вызове {@link #setText(String)}.
      *
      * @return Число кусков, замененных в тексте резюме при выполнении метода
      * @throws IllegalStateException Если текст резюме не был задан путем вызова {@link #setText(String)}.
      */
     @Override
-    public int unhideAll() {
+    public synchronized int unhideAll() {
         checkStateException();
-        System.out.println(hiddenParts);
-        AtomicInteger replacements = new AtomicInteger();
-        hiddenParts.keySet().forEach(hider -> {
-            try {
-                System.out.println("Seek " + removeParenthesises(hider) + " in " + text);
-                setText(Pattern.compile(removeParenthesises(hider)).matcher(text).
-                        replaceFirst(hiddenParts.get(hider)));
-                replacements.getAndIncrement();
-            } catch (Exception ignored) {
+        int replacements = journal.size();
+        if (replacements > 0) {
+            for (HiddenPart part : journal) {
+                debug(() -> "unhide [" + part.offset + ", " + part.end() + ") -> " + part.original);
+                text.replace(part.offset, part.end(), part.original);
             }
-
-        });
-        return replacements.intValue();
+            journal.clear();
+            textChanged();
+        }
+        return replacements;
     }
 }
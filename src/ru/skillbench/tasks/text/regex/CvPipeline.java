@@ -0,0 +1,411 @@
+package ru.skillbench.tasks.text.regex;
+
+import ru.skillbench.tasks.text.regex.CurriculumVitae.Phone;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Пакетная обработка резюме: для каждого документа извлекаются полное имя и телефоны,
+ * затем они скрываются в тексте ({@link CurriculumVitaeImpl#hide(String)} и {@link CurriculumVitaeImpl#hidePhones(java.util.Collection)}
+ * - все номера за один проход, поэтому номер, входящий в более длинный номер, не мешает скрыть длинный),
+ * и результат передается в {@link Sink}.<br/>
+ * Документы читаются в вызывающем потоке и обрабатываются в пуле потоков. Число документов, которые прочитаны,
+ * но еще не записаны, ограничено: при достижении предела чтение ждет (backpressure), поэтому в памяти
+ * одновременно находится не больше <code>maxInFlight</code> документов.<br/>
+ * Для каждой стадии ({@link Stage}) собираются число документов, пропускная способность и перцентили задержки.
+ */
+public class CvPipeline {
+    /**
+     * Стадии обработки документа
+     */
+    public enum Stage {
+        READ, EXTRACT, REDACT, WRITE
+    }
+
+    /**
+     * Входной документ
+     */
+    public static final class Document {
+        private final String name;
+        private final String text;
+
+        public Document(String name, String text) {
+            this.name = name;
+            this.text = text;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * Результат обработки документа
+     */
+    public static final class Result {
+        private final String name;
+        private final String fullName;
+        private final List<Phone> phones;
+        private final String redactedText;
+        private final Exception error;
+
+        Result(String name, String fullName, List<Phone> phones, String redactedText, Exception error) {
+            this.name = name;
+            this.fullName = fullName;
+            this.phones = phones;
+            this.redactedText = redactedText;
+            this.error = error;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Полное имя или <code>null</code>, если его нет в резюме
+         */
+        public String getFullName() {
+            return fullName;
+        }
+
+        public List<Phone> getPhones() {
+            return phones;
+        }
+
+        /**
+         * @return Текст со скрытыми именем и телефонами или <code>null</code> при ошибке
+         */
+        public String getRedactedText() {
+            return redactedText;
+        }
+
+        /**
+         * @return Ошибка обработки документа или <code>null</code>
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Получатель результатов. Вызовы сериализуются конвейером, поэтому реализация может быть непотокобезопасной.
+     */
+    public interface Sink {
+        void accept(Result result) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final int maxInFlight;
+
+    /**
+     * @param concurrency Число потоков обработки
+     * @param maxInFlight Максимальное число документов, прочитанных, но еще не записанных
+     * @throws IllegalArgumentException если параметры не положительны
+     */
+    public CvPipeline(int concurrency, int maxInFlight) {
+        this(Executors.newFixedThreadPool(checkPositive(concurrency)), maxInFlight, true);
+    }
+
+    /**
+     * @param executor    Пул, в котором обрабатываются документы (не закрывается конвейером)
+     * @param maxInFlight Максимальное число документов, прочитанных, но еще не записанных
+     * @throws IllegalArgumentException если <code>maxInFlight</code> не положительно
+     */
+    public CvPipeline(ExecutorService executor, int maxInFlight) {
+        this(executor, maxInFlight, false);
+    }
+
+    private CvPipeline(ExecutorService executor, int maxInFlight, boolean ownExecutor) {
+        this.executor = executor;
+        this.maxInFlight = checkPositive(maxInFlight);
+        this.ownExecutor = ownExecutor;
+    }
+
+    private static int checkPositive(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(String.valueOf(value));
+        }
+        return value;
+    }
+
+    /**
+     * Обрабатывает все обычные файлы каталога (в кодировке UTF-8).
+     *
+     * @throws IOException          при ошибке чтения каталога или файла либо записи в <code>sink</code>
+     * @throws InterruptedException если ожидание было прервано
+     */
+    public Report run(Path directory, Sink sink) throws IOException, InterruptedException {
+        ArrayList<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        Iterator<Path> paths = files.iterator();
+        return run(new Iterator<Document>() {
+            @Override
+            public boolean hasNext() {
+                return paths.hasNext();
+            }
+
+            @Override
+            public Document next() {
+                Path file = paths.next();
+                try {
+                    return new Document(file.getFileName().toString(),
+                            new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }, sink);
+    }
+
+    /**
+     * Обрабатывает документы по мере их получения из <code>documents</code>.<br/>
+     * После первой ошибки <code>sink</code> новые документы не читаются и не записываются.
+     *
+     * @throws IOException          при ошибке чтения документа или записи в <code>sink</code>
+     *                              (исключение <code>sink</code> другого типа - в качестве причины)
+     * @throws InterruptedException если ожидание было прервано
+     */
+    public Report run(Iterator<Document> documents, Sink sink) throws IOException, InterruptedException {
+        Report report = new Report();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicReference<Throwable> sinkError = new AtomicReference<>();
+        long started = System.nanoTime();
+        try {
+            while (sinkError.get() == null) {
+                inFlight.acquire();
+                long readStart = System.nanoTime();
+                Document document;
+                try {
+                    if (!documents.hasNext()) {
+                        inFlight.release();
+                        break;
+                    }
+                    document = documents.next();
+                } catch (UncheckedIOException e) {
+                    inFlight.release();
+                    throw e.getCause();
+                }
+                report.record(Stage.READ, readStart, System.nanoTime());
+                executor.execute(() -> {
+                    try {
+                        Result result = process(document, report);
+                        synchronized (sink) {
+                            long writeStart = System.nanoTime();
+                            if (sinkError.get() == null) {
+                                sink.accept(result);
+                            }
+                            report.record(Stage.WRITE, writeStart, System.nanoTime());
+                        }
+                    } catch (IOException | RuntimeException | Error e) {
+                        sinkError.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } finally {
+            if (ownExecutor) {
+                executor.shutdown();
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        }
+        report.wallNanos = System.nanoTime() - started;
+        Throwable error = sinkError.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error != null) {
+            throw new IOException("Sink failed: " + error, error);
+        }
+        return report;
+    }
+
+    private static Result process(Document document, Report report) {
+        long extractStart = System.nanoTime();
+        String fullName = null;
+        List<Phone> phones = Collections.emptyList();
+        try {
+            CurriculumVitaeImpl cv = new CurriculumVitaeImpl();
+            cv.setText(document.getText());
+            phones = cv.getPhones();
+            try {
+                fullName = cv.getFullName();
+            } catch (NoSuchElementException e) {
+                fullName = null;
+            }
+            long redactStart = System.nanoTime();
+            report.record(Stage.EXTRACT, extractStart, redactStart);
+
+            if (fullName != null) {
+                cv.hide(fullName);
+            }
+            LinkedHashSet<String> numbers = new LinkedHashSet<>();
+            for (Phone phone : phones) {
+                numbers.add(phone.getNumber());
+            }
+            cv.hidePhones(numbers);
+            String redacted = cv.getText();
+            report.record(Stage.REDACT, redactStart, System.nanoTime());
+            return new Result(document.getName(), fullName, phones, redacted, null);
+        } catch (RuntimeException e) {
+            return new Result(document.getName(), fullName, phones, null, e);
+        }
+    }
+
+    /**
+     * Статистика выполнения {@link #run(Iterator, Sink)}
+     */
+    public static final class Report {
+        private final Map<Stage, StageStats> stages = new EnumMap<>(Stage.class);
+        private volatile long wallNanos;
+
+        Report() {
+            for (Stage stage : Stage.values()) {
+                stages.put(stage, new StageStats());
+            }
+        }
+
+        void record(Stage stage, long start, long end) {
+            stages.get(stage).record(start, end);
+        }
+
+        public StageStats getStats(Stage stage) {
+            return stages.get(stage);
+        }
+
+        /**
+         * @return Общее время обработки в наносекундах
+         */
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append(String.format("%-8s %10s %12s %10s %10s %10s %10s%n",
+                    "stage", "count", "docs/s", "p50 us", "p90 us", "p99 us", "max us"));
+            for (Stage stage : Stage.values()) {
+                StageStats stats = stages.get(stage);
+                result.append(String.format("%-8s %10d %12.1f %10.1f %10.1f %10.1f %10.1f%n", stage, stats.getCount(),
+                        stats.getThroughput(), stats.getPercentile(50) / 1e3, stats.getPercentile(90) / 1e3,
+                        stats.getPercentile(99) / 1e3, stats.getMaxNanos() / 1e3));
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * Статистика одной стадии. Задержки хранятся в логарифмической гистограмме
+     * (16 интервалов на каждую степень двойки, т.е. с относительной погрешностью не больше 1/16).
+     */
+    public static final class StageStats {
+        private static final int SUB_BUCKETS = 16;
+        private static final int SUB_BUCKET_BITS = 4;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong firstStart = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong lastEnd = new AtomicLong(Long.MIN_VALUE);
+
+        void record(long start, long end) {
+            long nanos = Math.max(end - start, 0);
+            buckets.incrementAndGet(bucketOf(nanos));
+            count.incrementAndGet();
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            firstStart.accumulateAndGet(start, Math::min);
+            lastEnd.accumulateAndGet(end, Math::max);
+        }
+
+        private static int bucketOf(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) nanos;
+            }
+            int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /**
+         * @return Верхняя граница значений интервала гистограммы
+         */
+        private static long upperBoundOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+            return ((sub + 1) << shift) - 1;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * @return Число документов в секунду от начала первого до конца последнего документа стадии
+         */
+        public double getThroughput() {
+            long n = count.get();
+            long span = lastEnd.get() - firstStart.get();
+            return n == 0 || span <= 0 ? 0 : n * 1e9 / span;
+        }
+
+        /**
+         * @param percentile Перцентиль от 0 до 100
+         * @return Задержка в наносекундах, не меньше которой <code>percentile</code> процентов задержек
+         */
+        public long getPercentile(double percentile) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+    }
+}
@@ -0,0 +1,1007 @@
+package ru.skillbench.tasks.text.regex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Регулярное выражение, поиск по которому выполняется без возвратов (backtracking):
+ * выражение переводится в НКА, а тот - в ДКА, состояния которого строятся лениво при поиске
+ * и хранятся в кэше ограниченного размера.<br/>
+ * Каждый вызов {@link #find(CharSequence, int, int[])} просматривает текст за время O(n):
+ * прямой проход находит конец соответствия, обратный проход от конца - его начало.
+ * Соответствия совпадают с результатами {@link Matcher#find()} для того же {@link Pattern}
+ * (приоритет альтернатив и "жадность" квантификаторов учитываются порядком потоков НКА в состоянии ДКА).<br/>
+ * Поддерживаются символы, классы символов (без пересечений и вложенных классов), ".", предопределенные
+ * классы \d \w \s \v \h и их отрицания, группы (в т.ч. именованные и незахватывающие), альтернативы,
+ * квантификаторы * + ? {n,m} (жадные и ленивые), флаги {@link Pattern#CASE_INSENSITIVE} и {@link Pattern#LITERAL}.
+ * Для остальных конструкций (обратные ссылки, якоря, просмотр вперед/назад, притяжательные квантификаторы и т.п.)
+ * поиск выполняется самим {@link Pattern}; см. {@link #isLinear()}.<br/>
+ * Экземпляры потокобезопасны: поиск по уже построенным состояниям ДКА идет без блокировок,
+ * блокировка берется только на построение нового состояния.
+ */
+public final class LinearPattern {
+    private static final int INFINITY = -1;
+    private static final int MAX_REPEAT = 1000;
+    private static final int MAX_PROGRAM_SIZE = 20000;
+    private static final int MAX_STATES = 4096;
+    private static final int MAX_CODE_POINT = Character.MAX_CODE_POINT;
+
+    private final Pattern pattern;
+    private final Dfa forward;
+    private final Dfa reverse;
+
+    private LinearPattern(Pattern pattern, Dfa forward, Dfa reverse) {
+        this.pattern = pattern;
+        this.forward = forward;
+        this.reverse = reverse;
+    }
+
+    /**
+     * @param pattern Скомпилированное выражение
+     * @return {@link LinearPattern} для этого выражения; если выражение содержит неподдерживаемые конструкции,
+     * поиск будет делегироваться <code>pattern</code>
+     */
+    public static LinearPattern compile(Pattern pattern) {
+        try {
+            Node node = new Parser(pattern.pattern(), pattern.flags()).parse();
+            CharClasses classes = new CharClasses();
+            Program forwardProgram = new Program(node, classes);
+            Program reverseProgram = new Program(node.reverse(), classes);
+            classes.build();
+            return new LinearPattern(pattern,
+                    new Dfa(forwardProgram, classes, true),
+                    new Dfa(reverseProgram, classes, false));
+        } catch (UnsupportedPatternException e) {
+            return new LinearPattern(pattern, null, null);
+        }
+    }
+
+    /**
+     * @param regex Регулярное выражение
+     * @param flags Флаги {@link Pattern#compile(String, int)}
+     * @throws java.util.regex.PatternSyntaxException если выражение некорректно
+     */
+    public static LinearPattern compile(String regex, int flags) {
+        return compile(Pattern.compile(regex, flags));
+    }
+
+    /**
+     * @return Исходный {@link Pattern}
+     */
+    public Pattern pattern() {
+        return pattern;
+    }
+
+    /**
+     * @return <code>true</code> - поиск выполняется ДКА за линейное время,
+     * <code>false</code> - выражение не поддерживается и поиск выполняет {@link Pattern}
+     */
+    public boolean isLinear() {
+        return forward != null;
+    }
+
+    /**
+     * Ищет первое соответствие, начинающееся не раньше позиции <code>from</code>
+     * (как {@link Matcher#find(int)}).
+     *
+     * @param input  Текст
+     * @param from   Позиция начала поиска
+     * @param bounds Массив длиной не меньше 2, куда записываются начало и конец соответствия
+     * @return <code>true</code>, если соответствие найдено
+     */
+    public boolean find(CharSequence input, int from, int[] bounds) {
+        if (forward == null) {
+            Matcher matcher = pattern.matcher(input);
+            if (!matcher.find(from)) {
+                return false;
+            }
+            bounds[0] = matcher.start();
+            bounds[1] = matcher.end();
+            return true;
+        }
+        return findLinear(input, from, bounds);
+    }
+
+    private boolean findLinear(CharSequence input, int from, int[] bounds) {
+        int end = forward.searchForward(input, from);
+        if (end < 0) {
+            return false;
+        }
+        bounds[0] = reverse.searchBackward(input, end, from);
+        bounds[1] = end;
+        return true;
+    }
+
+    /**
+     * @return Все соответствия в <code>input</code> - то же, что {@link Patterns#findAll(String, Pattern)}
+     */
+    public List<String> findAll(CharSequence input) {
+        ArrayList<String> result = new ArrayList<>();
+        if (forward == null) {
+            Matcher matcher = pattern.matcher(input);
+            while (matcher.find()) {
+                result.add(matcher.group());
+            }
+            return result;
+        }
+        int[] bounds = new int[2];
+        int from = 0;
+        while (from <= input.length() && findLinear(input, from, bounds)) {
+            result.add(input.subSequence(bounds[0], bounds[1]).toString());
+            from = bounds[1] == bounds[0] ? bounds[1] + 1 : bounds[1];
+        }
+        return result;
+    }
+
+    /**
+     * @return Число соответствий в <code>input</code>
+     */
+    public int countMatches(CharSequence input) {
+        int result = 0;
+        if (forward == null) {
+            Matcher matcher = pattern.matcher(input);
+            while (matcher.find()) {
+                result++;
+            }
+            return result;
+        }
+        int[] bounds = new int[2];
+        int from = 0;
+        while (from <= input.length() && findLinear(input, from, bounds)) {
+            result++;
+            from = bounds[1] == bounds[0] ? bounds[1] + 1 : bounds[1];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return pattern.pattern();
+    }
+
+    /**
+     * Выражение содержит конструкцию, которую нельзя выполнить на ДКА
+     */
+    private static class UnsupportedPatternException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedPatternException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Множества кодовых точек - отсортированные непересекающиеся диапазоны [lo0, hi0, lo1, hi1, ...]
+     */
+    private static class CharSets {
+        static final int[] DIGIT = {'0', '9'};
+        static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+        static final int[] SPACE = {'\t', '\r', ' ', ' '};
+        static final int[] VERTICAL = {'\n', '\r', 0x85, 0x85, 0x2028, 0x2029};
+        static final int[] HORIZONTAL = {'\t', '\t', ' ', ' ', 0xA0, 0xA0, 0x1680, 0x1680, 0x180E, 0x180E,
+                0x2000, 0x200A, 0x202F, 0x202F, 0x205F, 0x205F, 0x3000, 0x3000};
+        static final int[] LINE_TERMINATORS = {'\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029};
+        static final int[] DOT = complement(LINE_TERMINATORS);
+
+        static int[] of(int c) {
+            return new int[]{c, c};
+        }
+
+        static int[] normalize(List<int[]> ranges) {
+            ArrayList<int[]> pairs = new ArrayList<>();
+            for (int[] set : ranges) {
+                for (int i = 0; i < set.length; i += 2) {
+                    pairs.add(new int[]{set[i], set[i + 1]});
+                }
+            }
+            pairs.sort((a, b) -> Integer.compare(a[0], b[0]));
+            int[] result = new int[pairs.size() * 2];
+            int size = 0;
+            for (int[] pair : pairs) {
+                if (size > 0 && pair[0] <= result[size - 1] + 1) {
+                    result[size - 1] = Math.max(result[size - 1], pair[1]);
+                } else {
+                    result[size++] = pair[0];
+                    result[size++] = pair[1];
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        static int[] complement(int[] set) {
+            int[] result = new int[set.length + 2];
+            int size = 0;
+            int next = 0;
+            for (int i = 0; i < set.length; i += 2) {
+                if (set[i] > next) {
+                    result[size++] = next;
+                    result[size++] = set[i] - 1;
+                }
+                next = set[i + 1] + 1;
+            }
+            if (next <= MAX_CODE_POINT) {
+                result[size++] = next;
+                result[size++] = MAX_CODE_POINT;
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        /**
+         * Добавляет к множеству латинские буквы другого регистра (как {@link Pattern#CASE_INSENSITIVE})
+         */
+        static int[] foldAscii(int[] set) {
+            ArrayList<int[]> parts = new ArrayList<>();
+            parts.add(set);
+            for (int i = 0; i < set.length; i += 2) {
+                int lo = Math.max(set[i], 'a');
+                int hi = Math.min(set[i + 1], 'z');
+                if (lo <= hi) {
+                    parts.add(new int[]{lo - 32, hi - 32});
+                }
+                lo = Math.max(set[i], 'A');
+                hi = Math.min(set[i + 1], 'Z');
+                if (lo <= hi) {
+                    parts.add(new int[]{lo + 32, hi + 32});
+                }
+            }
+            return normalize(parts);
+        }
+
+        static boolean contains(int[] set, int c) {
+            for (int i = 0; i < set.length && set[i] <= c; i += 2) {
+                if (c <= set[i + 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private abstract static class Node {
+        /**
+         * @return Выражение, которому соответствуют перевернутые строки
+         */
+        abstract Node reverse();
+
+        /**
+         * @return <code>true</code>, если выражению соответствует пустая строка
+         */
+        abstract boolean nullable();
+    }
+
+    private static class SetNode extends Node {
+        final int[] set;
+
+        SetNode(int[] set) {
+            this.set = set;
+        }
+
+        @Override
+        boolean nullable() {
+            return false;
+        }
+
+        @Override
+        Node reverse() {
+            return this;
+        }
+    }
+
+    private static class ConcatNode extends Node {
+        final List<Node> items;
+
+        ConcatNode(List<Node> items) {
+            this.items = items;
+        }
+
+        @Override
+        boolean nullable() {
+            for (Node item : items) {
+                if (!item.nullable()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        Node reverse() {
+            ArrayList<Node> reversed = new ArrayList<>(items.size());
+            for (int i = items.size() - 1; i >= 0; i--) {
+                reversed.add(items.get(i).reverse());
+            }
+            return new ConcatNode(reversed);
+        }
+    }
+
+    private static class AltNode extends Node {
+        final List<Node> items;
+
+        AltNode(List<Node> items) {
+            this.items = items;
+        }
+
+        @Override
+        boolean nullable() {
+            for (Node item : items) {
+                if (item.nullable()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        Node reverse() {
+            ArrayList<Node> reversed = new ArrayList<>(items.size());
+            for (Node item : items) {
+                reversed.add(item.reverse());
+            }
+            return new AltNode(reversed);
+        }
+    }
+
+    private static class RepeatNode extends Node {
+        final Node body;
+        final int min;
+        final int max;
+        final boolean greedy;
+
+        RepeatNode(Node body, int min, int max, boolean greedy) {
+            this.body = body;
+            this.min = min;
+            this.max = max;
+            this.greedy = greedy;
+        }
+
+        @Override
+        boolean nullable() {
+            return min == 0 || body.nullable();
+        }
+
+        @Override
+        Node reverse() {
+            return new RepeatNode(body.reverse(), min, max, greedy);
+        }
+    }
+
+    /**
+     * Разбор подмножества синтаксиса {@link Pattern} в дерево {@link Node}
+     */
+    private static class Parser {
+        private final String regex;
+        private final boolean ignoreCase;
+        private int position;
+
+        Parser(String regex, int flags) throws UnsupportedPatternException {
+            if ((flags & ~(Pattern.CASE_INSENSITIVE | Pattern.LITERAL)) != 0) {
+                throw new UnsupportedPatternException();
+            }
+            this.regex = (flags & Pattern.LITERAL) != 0 ? Pattern.quote(regex) : regex;
+            this.ignoreCase = (flags & Pattern.CASE_INSENSITIVE) != 0;
+            this.position = 0;
+        }
+
+        Node parse() throws UnsupportedPatternException {
+            Node result = parseAlternation();
+            if (position < regex.length()) {
+                throw new UnsupportedPatternException();
+            }
+            return result;
+        }
+
+        private boolean more() {
+            return position < regex.length();
+        }
+
+        private int peek() {
+            return regex.codePointAt(position);
+        }
+
+        private int next() {
+            int c = regex.codePointAt(position);
+            position += Character.charCount(c);
+            return c;
+        }
+
+        private boolean accept(char c) {
+            if (more() && regex.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private Node literal(int c) {
+            return new SetNode(ignoreCase ? CharSets.foldAscii(CharSets.of(c)) : CharSets.of(c));
+        }
+
+        private Node parseAlternation() throws UnsupportedPatternException {
+            ArrayList<Node> items = new ArrayList<>();
+            items.add(parseConcatenation());
+            while (accept('|')) {
+                items.add(parseConcatenation());
+            }
+            return items.size() == 1 ? items.get(0) : new AltNode(items);
+        }
+
+        private Node parseConcatenation() throws UnsupportedPatternException {
+            ArrayList<Node> items = new ArrayList<>();
+            while (more() && peek() != '|' && peek() != ')') {
+                items.add(parseQuantifier(parseAtom()));
+            }
+            return items.size() == 1 ? items.get(0) : new ConcatNode(items);
+        }
+
+        private Node parseAtom() throws UnsupportedPatternException {
+            int c = next();
+            switch (c) {
+                case '(':
+                    if (accept('?')) {
+                        if (accept('<') && more() && Character.isLetter(peek())) {
+                            while (more() && Character.isLetterOrDigit(peek())) {
+                                next();
+                            }
+                            if (!accept('>')) {
+                                throw new UnsupportedPatternException();
+                            }
+                        } else if (!accept(':')) {
+                            throw new UnsupportedPatternException();
+                        }
+                    }
+                    Node group = parseAlternation();
+                    if (!accept(')')) {
+                        throw new UnsupportedPatternException();
+                    }
+                    return group;
+                case '[':
+                    return new SetNode(parseClass());
+                case '.':
+                    return new SetNode(CharSets.DOT);
+                case '\\':
+                    if (accept('Q')) {
+                        int end = regex.indexOf("\\E", position);
+                        String quoted = regex.substring(position, end < 0 ? regex.length() : end);
+                        position = end < 0 ? regex.length() : end + 2;
+                        ArrayList<Node> items = new ArrayList<>();
+                        quoted.codePoints().forEach(q -> items.add(literal(q)));
+                        return new ConcatNode(items);
+                    }
+                    int[] escaped = parseEscape();
+                    return new SetNode(ignoreCase ? CharSets.foldAscii(escaped) : escaped);
+                case '^':
+                case '$':
+                case ')':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw new UnsupportedPatternException();
+                default:
+                    return literal(c);
+            }
+        }
+
+        private Node parseQuantifier(Node atom) throws UnsupportedPatternException {
+            int min;
+            int max;
+            if (accept('*')) {
+                min = 0;
+                max = INFINITY;
+            } else if (accept('+')) {
+                min = 1;
+                max = INFINITY;
+            } else if (accept('?')) {
+                min = 0;
+                max = 1;
+            } else if (accept('{')) {
+                min = parseNumber();
+                max = min;
+                if (accept(',')) {
+                    max = more() && Character.isDigit(peek()) ? parseNumber() : INFINITY;
+                }
+                if (!accept('}') || max != INFINITY && max < min || Math.max(min, max) > MAX_REPEAT) {
+                    throw new UnsupportedPatternException();
+                }
+            } else {
+                return atom;
+            }
+            boolean greedy = !accept('?');
+            if (more() && "+*?{".indexOf(regex.charAt(position)) >= 0) {
+                throw new UnsupportedPatternException();
+            }
+            if (atom.nullable()) {
+                // Matcher прекращает повторения, как только итерация совпала с пустой строкой;
+                // в ДКА это правило не выражается
+                throw new UnsupportedPatternException();
+            }
+            return new RepeatNode(atom, min, max, greedy);
+        }
+
+        private int parseNumber() throws UnsupportedPatternException {
+            int start = position;
+            while (more() && Character.isDigit(peek()) && position - start < 6) {
+                position++;
+            }
+            if (start == position) {
+                throw new UnsupportedPatternException();
+            }
+            return Integer.parseInt(regex.substring(start, position));
+        }
+
+        private int parseHex(int digits) throws UnsupportedPatternException {
+            if (position + digits > regex.length()) {
+                throw new UnsupportedPatternException();
+            }
+            try {
+                int value = Integer.parseInt(regex.substring(position, position + digits), 16);
+                position += digits;
+                return value;
+            } catch (NumberFormatException e) {
+                throw new UnsupportedPatternException();
+            }
+        }
+
+        /**
+         * Разбирает escape-последовательность после '\' (одинаково вне и внутри класса символов)
+         */
+        private int[] parseEscape() throws UnsupportedPatternException {
+            if (!more()) {
+                throw new UnsupportedPatternException();
+            }
+            int c = next();
+            switch (c) {
+                case 'd':
+                    return CharSets.DIGIT;
+                case 'D':
+                    return CharSets.complement(CharSets.DIGIT);
+                case 'w':
+                    return CharSets.WORD;
+                case 'W':
+                    return CharSets.complement(CharSets.WORD);
+                case 's':
+                    return CharSets.SPACE;
+                case 'S':
+                    return CharSets.complement(CharSets.SPACE);
+                case 'v':
+                    return CharSets.VERTICAL;
+                case 'V':
+                    return CharSets.complement(CharSets.VERTICAL);
+                case 'h':
+                    return CharSets.HORIZONTAL;
+                case 'H':
+                    return CharSets.complement(CharSets.HORIZONTAL);
+                case 't':
+                    return CharSets.of('\t');
+                case 'n':
+                    return CharSets.of('\n');
+                case 'r':
+                    return CharSets.of('\r');
+                case 'f':
+                    return CharSets.of('\f');
+                case 'a':
+                    return CharSets.of('\u0007');
+                case 'e':
+                    return CharSets.of('\u001B');
+                case 'x':
+                    return CharSets.of(parseHex(2));
+                case 'u':
+                    return CharSets.of(parseHex(4));
+                default:
+                    if (c < 128 && Character.isLetterOrDigit(c)) {
+                        throw new UnsupportedPatternException();
+                    }
+                    return CharSets.of(c);
+            }
+        }
+
+        /**
+         * Разбирает класс символов после '['
+         */
+        private int[] parseClass() throws UnsupportedPatternException {
+            boolean negate = accept('^');
+            ArrayList<int[]> parts = new ArrayList<>();
+            if (more() && peek() == ']') {
+                throw new UnsupportedPatternException();
+            }
+            while (!accept(']')) {
+                if (!more() || peek() == '[' || regex.startsWith("&&", position)) {
+                    throw new UnsupportedPatternException();
+                }
+                int[] item = classItem();
+                if (item.length == 2 && item[0] == item[1] && more() && peek() == '-'
+                        && position + 1 < regex.length() && regex.charAt(position + 1) != ']') {
+                    position++;
+                    if (peek() == '[') {
+                        throw new UnsupportedPatternException();
+                    }
+                    int[] end = classItem();
+                    if (end.length != 2 || end[0] != end[1] || end[0] < item[0]) {
+                        throw new UnsupportedPatternException();
+                    }
+                    item = new int[]{item[0], end[0]};
+                }
+                parts.add(item);
+            }
+            int[] set = CharSets.normalize(parts);
+            if (ignoreCase) {
+                set = CharSets.foldAscii(set);
+            }
+            return negate ? CharSets.complement(set) : set;
+        }
+
+        private int[] classItem() throws UnsupportedPatternException {
+            int c = next();
+            if (c == '\\') {
+                if (more() && peek() == 'Q') {
+                    throw new UnsupportedPatternException();
+                }
+                return parseEscape();
+            }
+            return CharSets.of(c);
+        }
+    }
+
+    /**
+     * Разбиение кодовых точек на классы эквивалентности: символы одного класса
+     * неразличимы для всех множеств выражения, поэтому ДКА хранит переходы по классам.
+     */
+    private static class CharClasses {
+        private final ArrayList<int[]> sets = new ArrayList<>();
+        private int[] cuts;
+        private final int[] ascii = new int[128];
+        /**
+         * setClasses[set][class] - входит ли класс в множество
+         */
+        private boolean[][] setClasses;
+
+        int add(int[] set) {
+            sets.add(set);
+            return sets.size() - 1;
+        }
+
+        void build() {
+            TreeSet<Integer> points = new TreeSet<>();
+            points.add(0);
+            for (int[] set : sets) {
+                for (int i = 0; i < set.length; i += 2) {
+                    points.add(set[i]);
+                    if (set[i + 1] < MAX_CODE_POINT) {
+                        points.add(set[i + 1] + 1);
+                    }
+                }
+            }
+            cuts = new int[points.size()];
+            int i = 0;
+            for (int point : points) {
+                cuts[i++] = point;
+            }
+            for (int c = 0; c < 128; c++) {
+                ascii[c] = search(c);
+            }
+            setClasses = new boolean[sets.size()][cuts.length];
+            for (int s = 0; s < sets.size(); s++) {
+                for (int k = 0; k < cuts.length; k++) {
+                    setClasses[s][k] = CharSets.contains(sets.get(s), cuts[k]);
+                }
+            }
+        }
+
+        private int search(int c) {
+            int index = Arrays.binarySearch(cuts, c);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        int classOf(int c) {
+            return c < 128 ? ascii[c] : search(c);
+        }
+
+        int count() {
+            return cuts.length;
+        }
+
+        boolean contains(int set, int charClass) {
+            return setClasses[set][charClass];
+        }
+    }
+
+    /**
+     * НКА: инструкции CHAR (переход по множеству), SPLIT (развилка с приоритетом первой ветви) и MATCH
+     */
+    private static class Program {
+        static final int CHAR = 0;
+        static final int SPLIT = 1;
+        static final int MATCH = 2;
+
+        private int[] ops = new int[64];
+        private int[] arg1 = new int[64];
+        private int[] arg2 = new int[64];
+        private int size = 0;
+        private final CharClasses classes;
+        private final int start;
+
+        Program(Node node, CharClasses classes) throws UnsupportedPatternException {
+            this.classes = classes;
+            int match = emit(MATCH, 0, 0);
+            start = compile(node, match);
+        }
+
+        private int emit(int op, int a, int b) throws UnsupportedPatternException {
+            if (size == ops.length) {
+                if (size >= MAX_PROGRAM_SIZE) {
+                    throw new UnsupportedPatternException();
+                }
+                ops = Arrays.copyOf(ops, size * 2);
+                arg1 = Arrays.copyOf(arg1, size * 2);
+                arg2 = Arrays.copyOf(arg2, size * 2);
+            }
+            ops[size] = op;
+            arg1[size] = a;
+            arg2[size] = b;
+            return size++;
+        }
+
+        /**
+         * Компилирует узел так, чтобы после него выполнялась инструкция <code>next</code>
+         *
+         * @return Номер первой инструкции узла
+         */
+        private int compile(Node node, int next) throws UnsupportedPatternException {
+            if (node instanceof SetNode) {
+                return emit(CHAR, classes.add(((SetNode) node).set), next);
+            }
+            if (node instanceof ConcatNode) {
+                List<Node> items = ((ConcatNode) node).items;
+                for (int i = items.size() - 1; i >= 0; i--) {
+                    next = compile(items.get(i), next);
+                }
+                return next;
+            }
+            if (node instanceof AltNode) {
+                List<Node> items = ((AltNode) node).items;
+                int entry = compile(items.get(items.size() - 1), next);
+                for (int i = items.size() - 2; i >= 0; i--) {
+                    entry = emit(SPLIT, compile(items.get(i), next), entry);
+                }
+                return entry;
+            }
+            RepeatNode repeat = (RepeatNode) node;
+            int entry;
+            if (repeat.max == INFINITY) {
+                entry = emit(SPLIT, 0, 0);
+                int body = compile(repeat.body, entry);
+                arg1[entry] = repeat.greedy ? body : next;
+                arg2[entry] = repeat.greedy ? next : body;
+            } else {
+                entry = next;
+                for (int i = repeat.min; i < repeat.max; i++) {
+                    int body = compile(repeat.body, entry);
+                    entry = repeat.greedy ? emit(SPLIT, body, next) : emit(SPLIT, next, body);
+                }
+            }
+            for (int i = 0; i < repeat.min; i++) {
+                entry = compile(repeat.body, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Ленивый ДКА над {@link Program}. Состояние - упорядоченный по приоритету список инструкций CHAR/MATCH.
+     * <ul>
+     * <li><code>leftmostFirst</code> - режим прямого поиска: потоки ниже по приоритету, чем первый MATCH, отбрасываются,
+     * а пока соответствие не найдено, на каждом шаге добавляется новый поток с начала выражения;</li>
+     * <li>иначе - режим обратного прохода: ищется самое длинное соответствие, привязанное к начальной позиции.</li>
+     * </ul>
+     */
+    private static class Dfa {
+        private final Program program;
+        private final CharClasses classes;
+        private final boolean leftmostFirst;
+        private final int[] startClosure;
+        // поля ниже используются только под блокировкой this
+        private final HashMap<State, State> index = new HashMap<>();
+        private final boolean[] visited;
+        private final ArrayDeque<Integer> stack = new ArrayDeque<>();
+        private final int[] buffer;
+        private volatile State initial;
+
+        Dfa(Program program, CharClasses classes, boolean leftmostFirst) {
+            this.program = program;
+            this.classes = classes;
+            this.leftmostFirst = leftmostFirst;
+            this.visited = new boolean[program.size];
+            this.buffer = new int[program.size];
+            int size = closure(program.start, 0);
+            startClosure = Arrays.copyOf(buffer, size);
+            Arrays.fill(visited, false);
+        }
+
+        /**
+         * Добавляет в buffer (начиная с позиции size) инструкции CHAR/MATCH, достижимые из pc
+         * по развилкам, в порядке приоритета.
+         *
+         * @return Новый размер списка в buffer
+         */
+        private int closure(int pc, int size) {
+            stack.push(pc);
+            while (!stack.isEmpty()) {
+                int current = stack.pop();
+                if (visited[current]) {
+                    continue;
+                }
+                visited[current] = true;
+                if (program.ops[current] == Program.SPLIT) {
+                    stack.push(program.arg2[current]);
+                    stack.push(program.arg1[current]);
+                } else {
+                    buffer[size++] = current;
+                    if (leftmostFirst && program.ops[current] == Program.MATCH) {
+                        stack.clear();
+                    }
+                }
+            }
+            return size;
+        }
+
+        private boolean hasMatch(int[] list) {
+            for (int pc : list) {
+                if (program.ops[pc] == Program.MATCH) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private State intern(int[] list, boolean searching) {
+            State key = new State(list, searching, hasMatch(list), classes.count());
+            State state = index.get(key);
+            if (state == null) {
+                state = key;
+                index.put(key, state);
+            }
+            return state;
+        }
+
+        private State initialState() {
+            State state = initial;
+            if (state == null) {
+                synchronized (this) {
+                    state = initial;
+                    if (state == null) {
+                        state = intern(startClosure, leftmostFirst && !hasMatch(startClosure));
+                        initial = state;
+                    }
+                }
+            }
+            return state;
+        }
+
+        /**
+         * Переход без блокировки; если он еще не построен - построение под блокировкой.
+         * Гонка при чтении <code>state.next</code> безопасна: поля {@link State} неизменяемы (final),
+         * а устаревшее значение <code>null</code> лишь приводит к повторной проверке под блокировкой.
+         */
+        private State step(State state, int charClass) {
+            State next = state.next[charClass];
+            return next != null ? next : build(state, charClass);
+        }
+
+        private synchronized State build(State state, int charClass) {
+            State next = state.next[charClass];
+            if (next != null) {
+                return next;
+            }
+            if (index.size() >= MAX_STATES) {
+                // новое поколение кэша; старые состояния остаются доступны потокам, которые сейчас по ним идут
+                index.clear();
+                initial = null;
+            }
+            int size = 0;
+            boolean matched = false;
+            for (int pc : state.list) {
+                if (program.ops[pc] == Program.CHAR && classes.contains(program.arg1[pc], charClass)) {
+                    size = closure(program.arg2[pc], size);
+                    if (leftmostFirst && size > 0 && program.ops[buffer[size - 1]] == Program.MATCH) {
+                        matched = true;
+                        break;
+                    }
+                }
+            }
+            if (state.searching && !matched) {
+                size = closure(program.start, size);
+                matched = size > 0 && program.ops[buffer[size - 1]] == Program.MATCH;
+            }
+            Arrays.fill(visited, false);
+            next = intern(Arrays.copyOf(buffer, size), state.searching && !matched);
+            state.next[charClass] = next;
+            return next;
+        }
+
+        /**
+         * Прямой проход: ищет конец первого (в смысле {@link Matcher#find()}) соответствия, начиная с from.
+         *
+         * @return Конец соответствия или -1
+         */
+        int searchForward(CharSequence input, int from) {
+            State state = initialState();
+            int end = state.match ? from : -1;
+            int position = from;
+            int length = input.length();
+            while (position < length && !state.dead) {
+                int c = Character.codePointAt(input, position);
+                state = step(state, classes.classOf(c));
+                position += Character.charCount(c);
+                if (state.match) {
+                    end = position;
+                }
+            }
+            return end;
+        }
+
+        /**
+         * Обратный проход по перевернутому выражению: ищет самое раннее начало соответствия,
+         * заканчивающегося в позиции end.
+         *
+         * @return Начало соответствия (не меньше from)
+         */
+        int searchBackward(CharSequence input, int end, int from) {
+            State state = initialState();
+            int start = state.match ? end : -1;
+            int position = end;
+            while (position > from && !state.dead) {
+                int c = Character.codePointBefore(input, position);
+                state = step(state, classes.classOf(c));
+                position -= Character.charCount(c);
+                if (state.match) {
+                    start = position;
+                }
+            }
+            return start;
+        }
+    }
+
+    /**
+     * Состояние ДКА: упорядоченный список потоков НКА. Равенство - по списку и режиму поиска.
+     */
+    private static final class State {
+        final int[] list;
+        final boolean searching;
+        final boolean match;
+        final boolean dead;
+        /**
+         * Переходы по классам символов; <code>null</code> - переход еще не построен
+         */
+        final State[] next;
+        private final int hash;
+
+        State(int[] list, boolean searching, boolean match, int classCount) {
+            this.list = list;
+            this.searching = searching;
+            this.match = match;
+            this.dead = list.length == 0 && !searching;
+            this.next = new State[classCount];
+            this.hash = Arrays.hashCode(list) * 2 + (searching ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof State)) {
+                return false;
+            }
+            State state = (State) obj;
+            return searching == state.searching && Arrays.equals(list, state.list);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ru.skillbench.tasks.text.regex;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Реализация {@link Patterns}, в которой {@link #findAll(String, Pattern)} и {@link #countMatches(String, String)}
+ * выполняются через {@link LinearPattern}, т.е. без возвратов и за линейное время для поддерживаемых выражений
+ * (в т.ч. для всех встроенных шаблонов). Неподдерживаемые выражения обрабатываются {@link java.util.regex}.
+ */
+public class LinearPatternsImpl extends PatternsImpl {
+    private static final int CACHE_CAPACITY = 256;
+
+    /**
+     * Скомпилированные {@link LinearPattern} по исходному {@link Pattern} (в порядке доступа)
+     */
+    private final Map<Pattern, LinearPattern> linearPatterns = new LinkedHashMap<Pattern, LinearPattern>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Pattern, LinearPattern> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    public LinearPatternsImpl() {
+        super();
+    }
+
+    public LinearPatternsImpl(PatternCache patternCache) {
+        super(patternCache);
+    }
+
+    /**
+     * @return {@link LinearPattern} для <code>pattern</code> (строится один раз для каждого объекта {@link Pattern})
+     */
+    public LinearPattern getLinearPattern(Pattern pattern) {
+        synchronized (linearPatterns) {
+            LinearPattern result = linearPatterns.get(pattern);
+            if (result == null) {
+                result = LinearPattern.compile(pattern);
+                linearPatterns.put(pattern, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Метод возвращает список всех соответствий шаблону <code>pattern</code> в строке <code>input</code>.
+     *
+     * @param input   строка для поиска
+     * @param pattern шаблон поиска.
+     * @return Список всех соответствий (пустой список, если соответствий нет).
+     */
+    @Override
+    public List<String> findAll(String input, Pattern pattern) {
+        return getLinearPattern(pattern).findAll(input);
+    }
+
+    /**
+     * Метод подсчитывает в строке <code>input</code> число соответствий шаблону, заданному выражением <code>regex</code>,
+     * без учета регистра.
+     *
+     * @param input строка, подлежащая проверке.
+     * @param regex регулярное выражение - шаблон поиска.
+     * @return число соответствий шаблону в строке <code>input</code>.
+     */
+    @Override
+    public int countMatches(String input, String regex) {
+        return getLinearPattern(getPatternCache().get(regex, Pattern.CASE_INSENSITIVE)).countMatches(input);
+    }
+}
@@ -0,0 +1,282 @@
+package ru.skillbench.tasks.text.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Поиск по нескольким шаблонам сразу.<br/>
+ * Для каждого шаблона результат такой же, как у {@link Patterns#findAll(String, Pattern)} с этим шаблоном,
+ * но текст просматривается автоматом Ахо-Корасик один раз для всех шаблонов:
+ * <ul>
+ * <li>шаблоны, которые являются просто строками (без метасимволов регулярных выражений,
+ * в т.ч. {@link Pattern#quote(String)} и {@link Pattern#LITERAL}), ищутся только этим автоматом;</li>
+ * <li>для остальных шаблонов можно указать обязательные подстроки: хотя бы одна из них
+ * входит в любое соответствие шаблону. Если ни одной из них нет в тексте, шаблон не проверяется вовсе;</li>
+ * <li>шаблоны без обязательных подстрок проверяются обычным {@link Matcher}.</li>
+ * </ul>
+ * Экземпляры создаются через {@link Builder} и после создания неизменяемы и потокобезопасны.
+ */
+public class MultiPatternMatcher {
+    /**
+     * Соответствие одному из шаблонов
+     */
+    public static final class Match {
+        private final CharSequence input;
+        private final int patternId;
+        private final int start;
+        private final int end;
+
+        Match(CharSequence input, int patternId, int start, int end) {
+            this.input = input;
+            this.patternId = patternId;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return Номер шаблона, возвращенный {@link Builder#add(Pattern, String...)}
+         */
+        public int getPatternId() {
+            return patternId;
+        }
+
+        public int start() {
+            return start;
+        }
+
+        public int end() {
+            return end;
+        }
+
+        /**
+         * @return Текст соответствия (как {@link Matcher#group()})
+         */
+        public String group() {
+            return input.subSequence(start, end).toString();
+        }
+
+        @Override
+        public String toString() {
+            return patternId + ":[" + start + ", " + end + ")" + group();
+        }
+    }
+
+    public static class Builder {
+        private final ArrayList<Pattern> patterns = new ArrayList<>();
+        private final ArrayList<String[]> literals = new ArrayList<>();
+
+        /**
+         * Добавляет шаблон.
+         *
+         * @param pattern          Шаблон поиска
+         * @param requiredLiterals Подстроки, хотя бы одна из которых входит в любое соответствие шаблону
+         *                         (с учетом {@link Pattern#CASE_INSENSITIVE}); могут отсутствовать.
+         *                         Для шаблонов с {@link Pattern#UNICODE_CASE} не используются
+         * @return Номер шаблона - его индекс в порядке добавления
+         */
+        public int add(Pattern pattern, String... requiredLiterals) {
+            for (String literal : requiredLiterals) {
+                if (literal.isEmpty()) {
+                    throw new IllegalArgumentException("empty literal");
+                }
+            }
+            patterns.add(pattern);
+            literals.add(requiredLiterals.clone());
+            return patterns.size() - 1;
+        }
+
+        public MultiPatternMatcher build() {
+            return new MultiPatternMatcher(this);
+        }
+    }
+
+    private final Pattern[] patterns;
+    /**
+     * Для шаблона-строки - сама строка, иначе <code>null</code>
+     */
+    private final String[] literalPatterns;
+    private final boolean[] prefiltered;
+    private final boolean[] caseSensitive;
+    private final AhoCorasick automaton;
+    /**
+     * Для каждой строки автомата - номер шаблона, к которому она относится
+     */
+    private final int[] keywordOwners;
+    private final String[] keywords;
+
+    private MultiPatternMatcher(Builder builder) {
+        int count = builder.patterns.size();
+        patterns = builder.patterns.toArray(new Pattern[0]);
+        literalPatterns = new String[count];
+        prefiltered = new boolean[count];
+        caseSensitive = new boolean[count];
+        ArrayList<String> keywordList = new ArrayList<>();
+        ArrayList<Integer> ownerList = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            Pattern pattern = patterns[id];
+            caseSensitive[id] = (pattern.flags() & Pattern.CASE_INSENSITIVE) == 0;
+            literalPatterns[id] = literalOf(pattern);
+            if (literalPatterns[id] != null) {
+                keywordList.add(literalPatterns[id]);
+                ownerList.add(id);
+            } else if (builder.literals.get(id).length > 0 && (pattern.flags() & Pattern.UNICODE_CASE) == 0) {
+                prefiltered[id] = true;
+                for (String literal : builder.literals.get(id)) {
+                    keywordList.add(literal);
+                    ownerList.add(id);
+                }
+            }
+        }
+        keywords = keywordList.toArray(new String[0]);
+        keywordOwners = new int[ownerList.size()];
+        for (int i = 0; i < keywordOwners.length; i++) {
+            keywordOwners[i] = ownerList.get(i);
+        }
+        automaton = new AhoCorasick(keywordList, true);
+    }
+
+    /**
+     * Определяет, является ли шаблон просто строкой, которую можно искать без регулярных выражений.
+     *
+     * @return Строка или <code>null</code>
+     */
+    static String literalOf(Pattern pattern) {
+        int flags = pattern.flags();
+        String regex = pattern.pattern();
+        if ((flags & ~(Pattern.CASE_INSENSITIVE | Pattern.LITERAL)) != 0 || regex.isEmpty()) {
+            return null;
+        }
+        if ((flags & Pattern.LITERAL) != 0) {
+            return regex;
+        }
+        if (regex.startsWith("\\Q") && regex.endsWith("\\E") && regex.length() > 4
+                && regex.indexOf("\\E") == regex.length() - 2) {
+            return regex.substring(2, regex.length() - 2);
+        }
+        for (int i = 0; i < regex.length(); i++) {
+            if ("\\^$.|?*+()[]{}".indexOf(regex.charAt(i)) >= 0) {
+                return null;
+            }
+        }
+        return regex;
+    }
+
+    /**
+     * @return Число шаблонов
+     */
+    public int getPatternCount() {
+        return patterns.length;
+    }
+
+    /**
+     * @return Шаблон с номером <code>patternId</code>
+     */
+    public Pattern getPattern(int patternId) {
+        return patterns[patternId];
+    }
+
+    private boolean regionMatches(CharSequence input, int start, String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (input.charAt(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Один проход автомата: собирает соответствия шаблонам-строкам в <code>found</code>
+     * и отмечает в <code>present</code> шаблоны, чьи обязательные подстроки встретились в тексте.
+     */
+    private void scanLiterals(CharSequence input, List<List<Match>> found, boolean[] present) {
+        if (keywords.length == 0) {
+            return;
+        }
+        int[] lastEnd = new int[patterns.length];
+        automaton.scan(input, (keyword, start, end) -> {
+            int id = keywordOwners[keyword];
+            if (caseSensitive[id] && !regionMatches(input, start, keywords[keyword])) {
+                return;
+            }
+            if (literalPatterns[id] != null) {
+                if (start >= lastEnd[id]) {
+                    found.get(id).add(new Match(input, id, start, end));
+                    lastEnd[id] = end;
+                }
+            } else {
+                present[id] = true;
+            }
+        });
+    }
+
+    /**
+     * @param input Текст для поиска
+     * @return Соответствия каждому шаблону: элемент с индексом N - соответствия шаблону N
+     * в том же порядке, что и у {@link Matcher#find()}
+     */
+    public List<List<Match>> findAllByPattern(CharSequence input) {
+        List<List<Match>> result = new ArrayList<>(patterns.length);
+        for (int id = 0; id < patterns.length; id++) {
+            result.add(new ArrayList<>());
+        }
+        boolean[] present = new boolean[patterns.length];
+        scanLiterals(input, result, present);
+        for (int id = 0; id < patterns.length; id++) {
+            if (literalPatterns[id] == null && (!prefiltered[id] || present[id])) {
+                Matcher matcher = patterns[id].matcher(input);
+                List<Match> matches = result.get(id);
+                while (matcher.find()) {
+                    matches.add(new Match(input, id, matcher.start(), matcher.end()));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param input Текст для поиска
+     * @return Соответствия всем шаблонам, упорядоченные по началу, затем по номеру шаблона
+     */
+    public List<Match> findAll(CharSequence input) {
+        ArrayList<Match> result = new ArrayList<>();
+        for (List<Match> matches : findAllByPattern(input)) {
+            result.addAll(matches);
+        }
+        result.sort(Comparator.comparingInt(Match::start).thenComparingInt(Match::getPatternId));
+        return result;
+    }
+
+    /**
+     * @param input Текст для поиска
+     * @return Число соответствий каждому шаблону (индекс массива - номер шаблона)
+     */
+    public int[] countMatches(CharSequence input) {
+        List<List<Match>> found = new ArrayList<>(patterns.length);
+        for (int id = 0; id < patterns.length; id++) {
+            found.add(new ArrayList<>());
+        }
+        boolean[] present = new boolean[patterns.length];
+        scanLiterals(input, found, present);
+        int[] result = new int[patterns.length];
+        for (int id = 0; id < result.length; id++) {
+            if (literalPatterns[id] != null) {
+                result[id] = found.get(id).size();
+            } else if (!prefiltered[id] || present[id]) {
+                Matcher matcher = patterns[id].matcher(input);
+                while (matcher.find()) {
+                    result[id]++;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "MultiPatternMatcher" + Arrays.toString(patterns);
+    }
+}
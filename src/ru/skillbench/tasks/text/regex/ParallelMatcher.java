@@ -0,0 +1,275 @@
+package ru.skillbench.tasks.text.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Параллельный поиск соответствий шаблону в большом тексте.<br/>
+ * Текст делится на блоки, и в каждом блоке задача {@link ForkJoinPool} ищет соответствия,
+ * начинающиеся в этом блоке, так, как если бы поиск начинался с начала блока (соответствие может
+ * выходить за конец блока, т.е. блоки перекрываются). Затем блоки сшиваются по порядку: если
+ * соответствие из предыдущего блока заходит в следующий, из найденных в нем соответствий отбрасываются
+ * те, что начинаются до позиции, с которой продолжился бы последовательный поиск. Как только позиция
+ * последовательного поиска совпадает с позицией поиска в блоке, дальнейшие результаты блока верны;
+ * если этого не случилось, блок просматривается заново с нужной позиции.<br/>
+ * Область поиска в блоке заканчивается через <code>maxMatchLength</code> символов после конца блока, поэтому работа
+ * каждого блока пропорциональна его длине и для редких соответствий не доходит до следующего соответствия
+ * за пределами блока. Соответствие, упирающееся в конец области ({@link Matcher#hitEnd()}), ищется заново
+ * в области вдвое длиннее.<br/>
+ * Поэтому результат совпадает с последовательным {@link Matcher#find()} (и по числу соответствий,
+ * и по порядку) для любых шаблонов, кроме использующих <code>\G</code>, при условии, что ни одно соответствие
+ * не длиннее <code>maxMatchLength</code> (как в {@link StreamingMatcher}).<br/>
+ * Экземпляр потокобезопасен.
+ */
+public class ParallelMatcher {
+    private static final int DEFAULT_MIN_CHUNK_LENGTH = 64 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+    /**
+     * Максимальная длина соответствия по умолчанию
+     */
+    public static final int DEFAULT_MAX_MATCH_LENGTH = 64 * 1024;
+    private static final ParallelMatcher DEFAULT = new ParallelMatcher(ForkJoinPool.commonPool(), DEFAULT_MIN_CHUNK_LENGTH);
+
+    private final ForkJoinPool pool;
+    private final int minChunkLength;
+    private final int maxMatchLength;
+
+    /**
+     * Создает поиск с максимальной длиной соответствия {@link #DEFAULT_MAX_MATCH_LENGTH}
+     *
+     * @param pool           Пул, в котором выполняется поиск
+     * @param minChunkLength Минимальная длина блока в символах; более короткий текст просматривается последовательно
+     * @throws IllegalArgumentException если <code>minChunkLength</code> не положительно
+     */
+    public ParallelMatcher(ForkJoinPool pool, int minChunkLength) {
+        this(pool, minChunkLength, DEFAULT_MAX_MATCH_LENGTH);
+    }
+
+    /**
+     * @param maxMatchLength Максимальная длина соответствия в символах; {@link Integer#MAX_VALUE} - без ограничения
+     *                       (тогда каждый блок может просматривать текст до следующего соответствия)
+     * @throws IllegalArgumentException если <code>minChunkLength</code> или <code>maxMatchLength</code> не положительны
+     */
+    public ParallelMatcher(ForkJoinPool pool, int minChunkLength, int maxMatchLength) {
+        if (minChunkLength <= 0) {
+            throw new IllegalArgumentException("minChunkLength: " + minChunkLength);
+        }
+        if (maxMatchLength <= 0) {
+            throw new IllegalArgumentException("maxMatchLength: " + maxMatchLength);
+        }
+        this.pool = pool;
+        this.minChunkLength = minChunkLength;
+        this.maxMatchLength = maxMatchLength;
+    }
+
+    /**
+     * @return Общий экземпляр на {@link ForkJoinPool#commonPool()}, используемый {@link PatternsImpl}
+     */
+    public static ParallelMatcher getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param maxMatchLength Максимальная длина соответствия в символах
+     * @return Поиск в том же пуле и с той же минимальной длиной блока, но с другой максимальной длиной соответствия
+     * @throws IllegalArgumentException если <code>maxMatchLength</code> не положительно
+     */
+    public ParallelMatcher withMaxMatchLength(int maxMatchLength) {
+        return maxMatchLength == this.maxMatchLength ? this : new ParallelMatcher(pool, minChunkLength, maxMatchLength);
+    }
+
+    /**
+     * @param input   Текст для поиска
+     * @param pattern Шаблон поиска
+     * @return Список всех соответствий в том же порядке, что и у {@link Matcher#find()}
+     */
+    public List<String> findAll(CharSequence input, Pattern pattern) {
+        ArrayList<String> result = new ArrayList<>();
+        scan(input, pattern, (start, end) -> result.add(input.subSequence(start, end).toString()));
+        return result;
+    }
+
+    /**
+     * @param input   Текст для поиска
+     * @param pattern Шаблон поиска
+     * @return Число соответствий, равное числу успешных вызовов {@link Matcher#find()}
+     */
+    public int countMatches(CharSequence input, Pattern pattern) {
+        int[] result = new int[1];
+        scan(input, pattern, (start, end) -> result[0]++);
+        return result[0];
+    }
+
+    private interface Sink {
+        void accept(int start, int end);
+    }
+
+    private static Matcher newMatcher(CharSequence input, Pattern pattern) {
+        Matcher matcher = pattern.matcher(input);
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        return matcher;
+    }
+
+    /**
+     * Позиция, с которой {@link Matcher#find()} продолжает поиск после соответствия [start, end)
+     */
+    private static int nextSearch(int start, int end) {
+        return end == start ? end + 1 : end;
+    }
+
+    /**
+     * Передает в <code>sink</code> соответствия, которые нашел бы последовательный поиск с позиции <code>from</code>,
+     * начинающиеся до позиции <code>end</code>.
+     *
+     * @return Позиция, с которой продолжился бы последовательный поиск после последнего переданного соответствия,
+     * или <code>from</code>, если соответствий нет
+     */
+    private static int find(Matcher matcher, int from, int end, int maxMatchLength, Sink sink) {
+        int length = matcher.reset().regionEnd();
+        int position = from;
+        int limit = (int) Math.min(length, (long) end + maxMatchLength);
+        while (position <= length && position < end) {
+            matcher.region(position, limit);
+            if (!matcher.find() || matcher.start() >= end) {
+                break;
+            }
+            if (matcher.hitEnd() && limit < length) {
+                // соответствие могло быть обрезано концом области: расширяем ее и повторяем поиск
+                limit = (int) Math.min(length, 2L * limit - position);
+                continue;
+            }
+            sink.accept(matcher.start(), matcher.end());
+            position = nextSearch(matcher.start(), matcher.end());
+        }
+        return position;
+    }
+
+    private void scan(CharSequence input, Pattern pattern, Sink sink) {
+        int length = input.length();
+        int chunkCount = Math.min(length / minChunkLength, pool.getParallelism() * CHUNKS_PER_THREAD);
+        if (chunkCount < 2 || pool.getParallelism() < 2) {
+            Matcher matcher = pattern.matcher(input);
+            while (matcher.find()) {
+                sink.accept(matcher.start(), matcher.end());
+            }
+            return;
+        }
+        Chunk[] chunks = new Chunk[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            // пустое соответствие в конце текста относится к последнему блоку
+            int end = i == chunkCount - 1 ? length + 1 : (int) ((long) length * (i + 1) / chunkCount);
+            chunks[i] = new Chunk((int) ((long) length * i / chunkCount), end);
+        }
+        pool.invoke(new ChunkTask(input, pattern, maxMatchLength, chunks, 0, chunkCount));
+
+        int next = 0;
+        Matcher matcher = null;
+        for (Chunk chunk : chunks) {
+            if (next >= chunk.end) {
+                continue;
+            }
+            int first = chunk.synchronize(Math.max(next, chunk.begin));
+            if (first < 0) {
+                if (matcher == null) {
+                    matcher = newMatcher(input, pattern);
+                }
+                next = find(matcher, next, chunk.end, maxMatchLength, sink);
+            } else {
+                for (int j = first; j < chunk.count; j++) {
+                    sink.accept(chunk.starts[j], chunk.ends[j]);
+                }
+                if (first < chunk.count) {
+                    next = nextSearch(chunk.starts[chunk.count - 1], chunk.ends[chunk.count - 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Соответствия, начинающиеся в блоке [begin, end), при поиске с начала блока
+     */
+    private static final class Chunk {
+        private final int begin;
+        private final int end;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int count;
+
+        Chunk(int begin, int end) {
+            this.begin = begin;
+            this.end = end;
+        }
+
+        void find(CharSequence input, Pattern pattern, int maxMatchLength) {
+            ParallelMatcher.find(newMatcher(input, pattern), begin, end, maxMatchLength, this::add);
+        }
+
+        private void add(int start, int end) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+
+        /**
+         * Находит первое соответствие блока, которое нашел бы и последовательный поиск, продолжающийся
+         * с позиции <code>next</code>: такое, что поиск в блоке дошел до него с позиции не дальше <code>next</code>.
+         *
+         * @return Индекс соответствия (<code>count</code>, если в блоке после <code>next</code> соответствий нет)
+         * или -1, если поиск в блоке перескочил позицию <code>next</code>
+         */
+        int synchronize(int next) {
+            int position = begin;
+            for (int j = 0; j < count; j++) {
+                if (position > next) {
+                    return -1;
+                }
+                if (next <= starts[j]) {
+                    return j;
+                }
+                position = nextSearch(starts[j], ends[j]);
+            }
+            return position <= next ? count : -1;
+        }
+    }
+
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CharSequence input;
+        private final Pattern pattern;
+        private final int maxMatchLength;
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        ChunkTask(CharSequence input, Pattern pattern, int maxMatchLength, Chunk[] chunks, int from, int to) {
+            this.input = input;
+            this.pattern = pattern;
+            this.maxMatchLength = maxMatchLength;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                chunks[from].find(input, pattern, maxMatchLength);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(input, pattern, maxMatchLength, chunks, from, middle),
+                        new ChunkTask(input, pattern, maxMatchLength, chunks, middle, to));
+            }
+        }
+    }
+}
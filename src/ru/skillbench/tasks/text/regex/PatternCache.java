@@ -0,0 +1,174 @@
+package ru.skillbench.tasks.text.regex;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Ограниченный по размеру потокобезопасный кэш скомпилированных регулярных выражений.<br/>
+ * Ключ - пара (regex, flags). Кэш разбит на сегменты, каждый из которых - {@link LinkedHashMap}
+ * в порядке доступа под собственной блокировкой, поэтому вытесняется наименее давно использованный
+ * шаблон своего сегмента (приближение LRU). Компиляция выполняется вне блокировки.
+ */
+public class PatternCache {
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final PatternCache DEFAULT = new PatternCache(DEFAULT_CAPACITY);
+
+    private final Segment[] segments;
+    /**
+     * Сдвиг, оставляющий от перемешанного хеша log2(segments.length) старших битов: младшие биты хеша
+     * использует для корзин HashMap внутри сегмента
+     */
+    private final int segmentShift;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity Максимальное число шаблонов в кэше
+     * @throws IllegalArgumentException если <code>capacity</code> не положительно
+     */
+    public PatternCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        int segmentCount = Integer.highestOneBit(Math.min(Math.max(capacity / 64, 1), 16));
+        segments = new Segment[segmentCount];
+        segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment((capacity + segmentCount - 1 - i) / segmentCount);
+        }
+    }
+
+    /**
+     * @return Общий кэш, используемый {@link PatternsImpl} по умолчанию
+     */
+    public static PatternCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Возвращает скомпилированный шаблон из кэша или компилирует и сохраняет его.
+     *
+     * @param regex Регулярное выражение
+     * @param flags Флаги {@link Pattern#compile(String, int)}
+     * @return Шаблон, равный <code>Pattern.compile(regex, flags)</code>
+     * @throws java.util.regex.PatternSyntaxException если выражение некорректно (такие выражения не кэшируются)
+     */
+    public Pattern get(String regex, int flags) {
+        Key key = new Key(regex, flags);
+        Segment segment = segments[(int) ((key.hash * 0x9E3779B9 & 0xFFFFFFFFL) >>> segmentShift)];
+        Pattern pattern;
+        synchronized (segment) {
+            pattern = segment.get(key);
+        }
+        if (pattern != null) {
+            hits.increment();
+            return pattern;
+        }
+        misses.increment();
+        Pattern compiled = Pattern.compile(regex, flags);
+        synchronized (segment) {
+            pattern = segment.putIfAbsent(key, compiled);
+        }
+        return pattern == null ? compiled : pattern;
+    }
+
+    /**
+     * @return Число шаблонов в кэше
+     */
+    public int size() {
+        int result = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                result += segment.size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Удаляет все шаблоны из кэша; счетчики при этом не сбрасываются.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return Число вызовов {@link #get(String, int)}, нашедших шаблон в кэше
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Число вызовов {@link #get(String, int)}, потребовавших компиляции
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Число шаблонов, вытесненных из кэша из-за ограничения размера
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "PatternCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "}";
+    }
+
+    private static final class Key {
+        private final String regex;
+        private final int flags;
+        private final int hash;
+
+        Key(String regex, int flags) {
+            this.regex = regex;
+            this.flags = flags;
+            this.hash = regex.hashCode() * 31 + flags;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return flags == key.flags && regex.equals(key.regex);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<Key, Pattern> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Pattern> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -1,11 +1,55 @@
 package ru.skillbench.tasks.text.regex;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 public class PatternsImpl implements Patterns {
+    /**
+     * Номера встроенных шаблонов в {@link #newMultiPatternMatcher(Pattern...)}
+     */
+    public static final int SQL_IDENTIFIER_ID = 0;
+    public static final int EMAIL_ID = 1;
+    public static final int HREF_TAG_ID = 2;
+
+    private static final Pattern SQL_IDENTIFIER_PATTERN =
+            Pattern.compile("[a-z][a-z0-9_]{0,29}", Pattern.CASE_INSENSITIVE);
+    private static final Pattern EMAIL_PATTERN = Pattern.compile(
+            "(([a-z0-9][a-z0-9_.-]{0,20}[a-z0-9])|([a-z0-9]))" +
+                    "@" +
+                    "([a-z0-9][a-z0-9-]*[a-z0-9]\\.)*" +
+                    "[a-z0-9][a-z0-9-]*[a-z0-9]" +
+                    "((\\.ru)|(\\.com)|(\\.net)|(\\.org))", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HREF_TAG_PATTERN = Pattern.compile(
+            "<\\s*\\w+\\s+href\\s*=\\s*((\".*\")|([^\\s\"]+))\\s*\\\\?>", Pattern.CASE_INSENSITIVE);
+
+    private final PatternCache patternCache;
+
+    public PatternsImpl() {
+        this(PatternCache.getDefault());
+    }
+
+    /**
+     * @param patternCache Кэш, из которого {@link #countMatches(String, String)} берет скомпилированные шаблоны
+     */
+    public PatternsImpl(PatternCache patternCache) {
+        this.patternCache = patternCache;
+    }
+
+    protected PatternCache getPatternCache() {
+        return patternCache;
+    }
+
     /**
      * Идентификаторы в стандартном SQL (имена таблиц, столбцов и др.) должны начинаться c буквы латинского алфавита, <br/>
      * а остальными символами могут быть как буквы латинского алфавита, так и цифры, а также знаки подчеркивания ("_").<br/>
@@ -15,7 +59,7 @@ public class PatternsImpl implements Patterns {
      */
     @Override
     public Pattern getSQLIdentifierPattern() {
-        return Pattern.compile("[a-z][a-z0-9_]{0,29}", Pattern.CASE_INSENSITIVE);
+        return SQL_IDENTIFIER_PATTERN;
     }
 
     /**
@@ -36,14 +80,7 @@ public class PatternsImpl implements Patterns {
      */
     @Override
     public Pattern getEmailPattern() {
-        String accountPattern = "(([a-z0-9][a-z0-9_.-]{0,20}[a-z0-9])|([a-z0-9]))";
-        String domainPattern =  "([a-z0-9][a-z0-9-]*[a-z0-9]\\.)*" +
-                "[a-z0-9][a-z0-9-]*[a-z0-9]";
-        String firstLevelDomainPattern = "((\\.ru)|(\\.com)|(\\.net)|(\\.org))";
-        return Pattern.compile(accountPattern +
-                "@" +
-                domainPattern +
-                firstLevelDomainPattern, Pattern.CASE_INSENSITIVE);
+        return EMAIL_PATTERN;
     }
 
     /**
@@ -66,7 +103,7 @@ public class PatternsImpl implements Patterns {
      */
     @Override
     public Pattern getHrefTagPattern() {
-        return Pattern.compile("<\\s*\\w+\\s+href\\s*=\\s*((\".*\")|([^\\s\"]+))\\s*\\\\?>", Pattern.CASE_INSENSITIVE);
+        return HREF_TAG_PATTERN;
     }
 
     /**
@@ -86,6 +123,99 @@ public class PatternsImpl implements Patterns {
         return result;
     }
 
+    /**
+     * Параллельный вариант {@link #findAll(String, Pattern)} для больших текстов с максимальной длиной соответствия
+     * {@link ParallelMatcher#DEFAULT_MAX_MATCH_LENGTH}.
+     *
+     * @see #findAllParallel(String, Pattern, int)
+     */
+    public List<String> findAllParallel(String input, Pattern pattern) {
+        return findAllParallel(input, pattern, ParallelMatcher.DEFAULT_MAX_MATCH_LENGTH);
+    }
+
+    /**
+     * Параллельный вариант {@link #findAll(String, Pattern)} для больших текстов.<br/>
+     * Результат тот же, в том же порядке, если ни одно соответствие не длиннее <code>maxMatchLength</code>
+     * (как в {@link StreamingMatcher}); более длинное соответствие, пересекающее границу блока, может быть пропущено.
+     *
+     * @param maxMatchLength Максимальная длина соответствия в символах; {@link Integer#MAX_VALUE} - без ограничения
+     * @throws IllegalArgumentException если <code>maxMatchLength</code> не положительно
+     * @see ParallelMatcher
+     */
+    public List<String> findAllParallel(String input, Pattern pattern, int maxMatchLength) {
+        return ParallelMatcher.getDefault().withMaxMatchLength(maxMatchLength).findAll(input, pattern);
+    }
+
+    /**
+     * Потоковый вариант {@link #findAll(String, Pattern)} для файла в кодировке UTF-8:
+     * файл читается блоками, и соответствия передаются в <code>listener</code> по мере нахождения.
+     *
+     * @param file           Файл для поиска
+     * @param pattern        Шаблон поиска
+     * @param maxMatchLength Максимальная длина соответствия в символах (см. {@link StreamingMatcher})
+     * @param listener       Получатель соответствий со смещениями от начала файла
+     * @throws IOException при ошибке чтения
+     */
+    public void findAll(Path file, Pattern pattern, int maxMatchLength,
+                        Consumer<? super StreamingMatcher.Match> listener) throws IOException {
+        findAll(FileChannel.open(file, StandardOpenOption.READ), StandardCharsets.UTF_8, pattern, maxMatchLength,
+                listener);
+    }
+
+    /**
+     * Потоковый вариант {@link #findAll(String, Pattern)} для данных из канала;
+     * канал закрывается по окончании поиска (и если параметры некорректны).
+     *
+     * @param charset Кодировка данных
+     * @see #findAll(Path, Pattern, int, Consumer)
+     */
+    public void findAll(ReadableByteChannel channel, Charset charset, Pattern pattern, int maxMatchLength,
+                        Consumer<? super StreamingMatcher.Match> listener) throws IOException {
+        try (StreamingMatcher matcher = open(channel, charset, pattern, maxMatchLength)) {
+            matcher.forEach(listener);
+        }
+    }
+
+    /**
+     * Ленивый поток соответствий шаблону в файле в кодировке UTF-8. Файл читается по мере потребления
+     * элементов; поток нужно закрыть (например, в try-with-resources), чтобы закрыть файл.
+     *
+     * @see #findAll(Path, Pattern, int, Consumer)
+     */
+    public Stream<StreamingMatcher.Match> streamAll(Path file, Pattern pattern, int maxMatchLength)
+            throws IOException {
+        return streamAll(FileChannel.open(file, StandardOpenOption.READ), StandardCharsets.UTF_8, pattern,
+                maxMatchLength);
+    }
+
+    /**
+     * Ленивый поток соответствий шаблону в данных из канала; закрытие потока закрывает канал
+     * (если параметры некорректны, канал закрывается сразу).
+     *
+     * @see #findAll(ReadableByteChannel, Charset, Pattern, int, Consumer)
+     */
+    public Stream<StreamingMatcher.Match> streamAll(ReadableByteChannel channel, Charset charset, Pattern pattern,
+                                                    int maxMatchLength) {
+        return open(channel, charset, pattern, maxMatchLength).stream();
+    }
+
+    /**
+     * Создает {@link StreamingMatcher}, закрывая канал, если конструктор выбросил исключение
+     */
+    private static StreamingMatcher open(ReadableByteChannel channel, Charset charset, Pattern pattern,
+                                         int maxMatchLength) {
+        try {
+            return new StreamingMatcher(channel, charset, pattern, maxMatchLength);
+        } catch (RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            throw e;
+        }
+    }
+
     /**
      * Метод подсчитывает в строке <code>input</code> число соответствий шаблону, заданному выражением <code>regex</code>.
      * На случай, если в <code>regex</code> встречаются буквы в конкретном регистре (как в выражении {@link #getHrefTagPattern()}),
@@ -97,11 +227,54 @@ public class PatternsImpl implements Patterns {
      */
     @Override
     public int countMatches(String input, String regex) {
-        Matcher matcher = Pattern.compile(regex, Pattern.CASE_INSENSITIVE).matcher(input);
+        Matcher matcher = patternCache.get(regex, Pattern.CASE_INSENSITIVE).matcher(input);
         int result = 0;
         while (matcher.find()) {
             result++;
         }
         return result;
     }
+
+    /**
+     * Параллельный вариант {@link #countMatches(String, String)} для больших текстов с максимальной длиной соответствия
+     * {@link ParallelMatcher#DEFAULT_MAX_MATCH_LENGTH}.
+     *
+     * @see #countMatchesParallel(String, String, int)
+     */
+    public int countMatchesParallel(String input, String regex) {
+        return countMatchesParallel(input, regex, ParallelMatcher.DEFAULT_MAX_MATCH_LENGTH);
+    }
+
+    /**
+     * Параллельный вариант {@link #countMatches(String, String)} для больших текстов.<br/>
+     * Результат тот же, если ни одно соответствие не длиннее <code>maxMatchLength</code>;
+     * более длинное соответствие, пересекающее границу блока, может быть не учтено.
+     *
+     * @param maxMatchLength Максимальная длина соответствия в символах; {@link Integer#MAX_VALUE} - без ограничения
+     * @throws IllegalArgumentException если <code>maxMatchLength</code> не положительно
+     * @see ParallelMatcher
+     */
+    public int countMatchesParallel(String input, String regex, int maxMatchLength) {
+        return ParallelMatcher.getDefault().withMaxMatchLength(maxMatchLength)
+                .countMatches(input, patternCache.get(regex, Pattern.CASE_INSENSITIVE));
+    }
+
+    /**
+     * Создает {@link MultiPatternMatcher}, который за один проход ищет шаблоны {@link #getSQLIdentifierPattern()},
+     * {@link #getEmailPattern()} и {@link #getHrefTagPattern()} (номера {@link #SQL_IDENTIFIER_ID}, {@link #EMAIL_ID}
+     * и {@link #HREF_TAG_ID}), а также пользовательские шаблоны (номера начиная с 3 в порядке передачи).
+     *
+     * @param userPatterns Дополнительные шаблоны
+     * @return Готовый к использованию {@link MultiPatternMatcher}
+     */
+    public MultiPatternMatcher newMultiPatternMatcher(Pattern... userPatterns) {
+        MultiPatternMatcher.Builder builder = new MultiPatternMatcher.Builder();
+        builder.add(getSQLIdentifierPattern());
+        builder.add(getEmailPattern(), "@");
+        builder.add(getHrefTagPattern(), "href");
+        for (Pattern pattern : userPatterns) {
+            builder.add(pattern);
+        }
+        return builder.build();
+    }
 }
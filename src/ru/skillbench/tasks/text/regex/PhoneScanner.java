@@ -0,0 +1,279 @@
+package ru.skillbench.tasks.text.regex;
+
+import ru.skillbench.tasks.text.regex.CurriculumVitae.Phone;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Поиск телефонов в тексте без регулярных выражений.<br/>
+ * Распознает в точности ту же грамматику, что и {@link CurriculumVitae#PHONE_PATTERN}, и находит те же
+ * соответствия, что и {@link java.util.regex.Matcher#find()} с этим выражением: необязательный код региона
+ * (3 цифры, возможно в скобках), 7 цифр номера с разделителями '-', '.', ' ' и необязательный доп. номер
+ * после "ext" или "ext.". Код региона и доп. номер вычисляются прямо по символам текста, без выделения подстрок.<br/>
+ * Используется как {@link java.util.regex.Matcher}: {@link #find()}, затем {@link #start()}, {@link #end()},
+ * {@link #getAreaCode()}, {@link #getExtension()} или {@link #toPhone()}.<br/>
+ * Экземпляр не потокобезопасен.
+ */
+public final class PhoneScanner {
+    private final CharSequence input;
+    private final int length;
+    private int position;
+    private int start;
+    private int end;
+    private int areaCode;
+    private int extension;
+
+    /**
+     * @param input Текст для поиска
+     */
+    public PhoneScanner(CharSequence input) {
+        this.input = input;
+        this.length = input.length();
+        this.position = 0;
+        this.start = -1;
+        this.end = -1;
+        this.areaCode = -1;
+        this.extension = -1;
+    }
+
+    /**
+     * @param input Текст для поиска
+     * @return Все телефоны в тексте в порядке их расположения
+     */
+    public static List<Phone> findAll(CharSequence input) {
+        ArrayList<Phone> result = new ArrayList<>();
+        PhoneScanner scanner = new PhoneScanner(input);
+        while (scanner.find()) {
+            result.add(scanner.toPhone());
+        }
+        return result;
+    }
+
+    /**
+     * @param input Текст для поиска
+     * @return Ленивый поток телефонов в тексте в порядке их расположения
+     */
+    public static Stream<Phone> stream(CharSequence input) {
+        PhoneScanner scanner = new PhoneScanner(input);
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<Phone>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Phone> action) {
+                if (!scanner.find()) {
+                    return false;
+                }
+                action.accept(scanner.toPhone());
+                return true;
+            }
+        }, false);
+    }
+
+    /**
+     * Ищет следующий телефон начиная с конца предыдущего.
+     *
+     * @return <code>true</code>, если телефон найден
+     */
+    public boolean find() {
+        for (int p = position; p < length; p++) {
+            if (matchAt(p)) {
+                position = end;
+                return true;
+            }
+        }
+        position = length;
+        start = -1;
+        end = -1;
+        return false;
+    }
+
+    /**
+     * @return Начало найденного телефона
+     */
+    public int start() {
+        checkMatch();
+        return start;
+    }
+
+    /**
+     * @return Конец найденного телефона (не включительно)
+     */
+    public int end() {
+        checkMatch();
+        return end;
+    }
+
+    /**
+     * @return Код региона найденного телефона или -1, если его нет
+     */
+    public int getAreaCode() {
+        checkMatch();
+        return areaCode;
+    }
+
+    /**
+     * @return Доп. номер найденного телефона или -1, если его нет;
+     * {@link Integer#MAX_VALUE}, если он не помещается в int
+     */
+    public int getExtension() {
+        checkMatch();
+        return extension;
+    }
+
+    /**
+     * @return Найденный телефон
+     */
+    public Phone toPhone() {
+        checkMatch();
+        return new Phone(input.subSequence(start, end).toString(), areaCode, extension);
+    }
+
+    private void checkMatch() {
+        if (start < 0) {
+            throw new IllegalStateException("No match available");
+        }
+    }
+
+    /**
+     * Проверяет соответствие в позиции <code>p</code>: сначала с кодом региона, затем без него
+     * (другие варианты, которые перебирал бы {@link java.util.regex.Matcher}, заведомо неуспешны).
+     */
+    private boolean matchAt(int p) {
+        char c = input.charAt(p);
+        if (c == '(' || isNonZeroDigit(c)) {
+            int i = c == '(' ? p + 1 : p;
+            if (isThreeDigits(i)) {
+                int area = number(i, i + 3);
+                i += 3;
+                if (i < length && input.charAt(i) == ')') {
+                    i++;
+                }
+                int coreEnd = matchCore(skipSeparators(i));
+                if (coreEnd >= 0) {
+                    start = p;
+                    areaCode = area;
+                    end = matchExtension(coreEnd);
+                    return true;
+                }
+            }
+        }
+        if (isNonZeroDigit(c)) {
+            int coreEnd = matchCore(p);
+            if (coreEnd >= 0) {
+                start = p;
+                areaCode = -1;
+                end = matchExtension(coreEnd);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <code>([1-9][0-9]{2})[-. ]*(\d{2})[-. ]*(\d{2})</code>
+     *
+     * @return Конец соответствия или -1
+     */
+    private int matchCore(int i) {
+        if (!isThreeDigits(i)) {
+            return -1;
+        }
+        i = skipSeparators(i + 3);
+        if (!isDigit(i) || !isDigit(i + 1)) {
+            return -1;
+        }
+        i = skipSeparators(i + 2);
+        if (!isDigit(i) || !isDigit(i + 1)) {
+            return -1;
+        }
+        return i + 2;
+    }
+
+    /**
+     * <code>(\s*ext\.?\s*([0-9]+))?</code>; заполняет {@link #extension}
+     *
+     * @return Конец соответствия
+     */
+    private int matchExtension(int coreEnd) {
+        extension = -1;
+        int i = skipWhitespace(coreEnd);
+        if (i + 3 > length || input.charAt(i) != 'e' || input.charAt(i + 1) != 'x' || input.charAt(i + 2) != 't') {
+            return coreEnd;
+        }
+        i += 3;
+        if (i < length && input.charAt(i) == '.') {
+            i++;
+        }
+        i = skipWhitespace(i);
+        if (!isDigit(i)) {
+            return coreEnd;
+        }
+        int digitsEnd = i;
+        while (isDigit(digitsEnd)) {
+            digitsEnd++;
+        }
+        extension = number(i, digitsEnd);
+        return digitsEnd;
+    }
+
+    /**
+     * @return Число из цифр [from, to) или {@link Integer#MAX_VALUE}, если число не помещается в int
+     */
+    private int number(int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            int digit = input.charAt(i) - '0';
+            if (result > (Integer.MAX_VALUE - digit) / 10) {
+                return Integer.MAX_VALUE;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private boolean isDigit(int i) {
+        if (i >= length) {
+            return false;
+        }
+        char c = input.charAt(i);
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isNonZeroDigit(char c) {
+        return c >= '1' && c <= '9';
+    }
+
+    private boolean isThreeDigits(int i) {
+        return i < length && isNonZeroDigit(input.charAt(i)) && isDigit(i + 1) && isDigit(i + 2);
+    }
+
+    private int skipSeparators(int i) {
+        while (i < length) {
+            char c = input.charAt(i);
+            if (c != '-' && c != '.' && c != ' ') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Пропускает символы <code>\s</code>: пробел и символы с кодами 0x09-0x0D
+     */
+    private int skipWhitespace(int i) {
+        while (i < length) {
+            char c = input.charAt(i);
+            if (c != ' ' && (c < '\t' || c > '\r')) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+}
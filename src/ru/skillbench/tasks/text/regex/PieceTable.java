@@ -0,0 +1,198 @@
+package ru.skillbench.tasks.text.regex;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Изменяемый текст в виде таблицы фрагментов (piece table).<br/>
+ * Текст - это последовательность фрагментов, каждый из которых ссылается на часть исходной строки
+ * или буфера добавлений (в него только дописываются вставленные строки). Фрагменты хранятся в декартовом
+ * дереве (treap) по позиции, поэтому {@link #replace(int, int, CharSequence)} и {@link #charAt(int)}
+ * выполняются за O(log n) от числа фрагментов (в среднем) и не копируют остальной текст.<br/>
+ * Строка целиком собирается лениво в {@link #toString()} и хранится до следующего изменения.<br/>
+ * Экземпляр не потокобезопасен.
+ */
+public final class PieceTable implements CharSequence {
+    private final String original;
+    private final StringBuilder added;
+    private Piece root;
+    private String flattened;
+
+    /**
+     * @param text Исходный текст
+     */
+    public PieceTable(String text) {
+        this.original = text;
+        this.added = new StringBuilder();
+        this.root = text.isEmpty() ? null : new Piece(false, 0, text.length(), randomPriority());
+        this.flattened = text;
+    }
+
+    @Override
+    public int length() {
+        return size(root);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index: " + index);
+        }
+        Piece piece = root;
+        while (true) {
+            int leftSize = size(piece.left);
+            if (index < leftSize) {
+                piece = piece.left;
+            } else if (index < leftSize + piece.length) {
+                return buffer(piece).charAt(piece.offset + index - leftSize);
+            } else {
+                index -= leftSize + piece.length;
+                piece = piece.right;
+            }
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    /**
+     * Заменяет символы [start, end) строкой <code>replacement</code> (при <code>start == end</code> - вставка,
+     * при пустой <code>replacement</code> - удаление).
+     *
+     * @throws IndexOutOfBoundsException если <code>start</code> или <code>end</code> вне текста или <code>start &gt; end</code>
+     */
+    public void replace(int start, int end, CharSequence replacement) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ") of " + length());
+        }
+        Piece[] head = split(root, start);
+        Piece[] tail = split(head[1], end - start);
+        Piece middle = null;
+        if (replacement.length() > 0) {
+            middle = new Piece(true, added.length(), replacement.length(), randomPriority());
+            added.append(replacement);
+        }
+        root = merge(merge(head[0], middle), tail[1]);
+        flattened = null;
+    }
+
+    /**
+     * @return Число фрагментов, из которых состоит текст
+     */
+    public int getPieceCount() {
+        return count(root);
+    }
+
+    /**
+     * @return Текст целиком (собирается при первом вызове после изменения)
+     */
+    @Override
+    public String toString() {
+        if (flattened == null) {
+            StringBuilder result = new StringBuilder(length());
+            append(root, result);
+            flattened = result.toString();
+        }
+        return flattened;
+    }
+
+    private CharSequence buffer(Piece piece) {
+        return piece.added ? added : original;
+    }
+
+    private void append(Piece piece, StringBuilder result) {
+        while (piece != null) {
+            append(piece.left, result);
+            result.append(buffer(piece), piece.offset, piece.offset + piece.length);
+            piece = piece.right;
+        }
+    }
+
+    private static int randomPriority() {
+        return ThreadLocalRandom.current().nextInt();
+    }
+
+    private static int count(Piece piece) {
+        return piece == null ? 0 : count(piece.left) + 1 + count(piece.right);
+    }
+
+    private static int size(Piece piece) {
+        return piece == null ? 0 : piece.size;
+    }
+
+    /**
+     * Делит дерево на первые <code>position</code> символов и остальные; фрагмент на границе режется надвое.
+     */
+    private static Piece[] split(Piece piece, int position) {
+        if (piece == null) {
+            return new Piece[2];
+        }
+        int leftSize = size(piece.left);
+        if (position <= leftSize) {
+            Piece[] parts = split(piece.left, position);
+            piece.left = parts[1];
+            piece.update();
+            parts[1] = piece;
+            return parts;
+        }
+        if (position >= leftSize + piece.length) {
+            Piece[] parts = split(piece.right, position - leftSize - piece.length);
+            piece.right = parts[0];
+            piece.update();
+            parts[0] = piece;
+            return parts;
+        }
+        int cut = position - leftSize;
+        // правая часть становится корнем своего дерева на месте исходного фрагмента
+        Piece rest = new Piece(piece.added, piece.offset + cut, piece.length - cut, piece.priority);
+        rest.right = piece.right;
+        rest.update();
+        piece.length = cut;
+        piece.right = null;
+        piece.update();
+        return new Piece[]{piece, rest};
+    }
+
+    private static Piece merge(Piece left, Piece right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static final class Piece {
+        private final boolean added;
+        private final int offset;
+        private final int priority;
+        private int length;
+        /**
+         * Число символов в поддереве
+         */
+        private int size;
+        private Piece left;
+        private Piece right;
+
+        Piece(boolean added, int offset, int length, int priority) {
+            this.added = added;
+            this.offset = offset;
+            this.length = length;
+            this.size = length;
+            this.priority = priority;
+        }
+
+        void update() {
+            size = PieceTable.size(left) + length + PieceTable.size(right);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package ru.skillbench.tasks.text.regex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Потоковый поиск соответствий шаблону в данных из {@link ReadableByteChannel}, не требующий
+ * загружать весь текст в память.<br/>
+ * Текст декодируется в скользящее окно {@link CharBuffer}. Соответствие считается окончательным,
+ * если {@link Matcher} не дошел до конца окна ({@link Matcher#hitEnd()}) или если окно содержит
+ * не меньше <code>maxMatchLength</code> символов от начала соответствия; иначе читается следующий блок.
+ * Поэтому соответствия, пересекающие границу блока, находятся так же, как в целом тексте, при условии,
+ * что ни одно соответствие не длиннее <code>maxMatchLength</code>. Перед позицией поиска в окне сохраняется
+ * не меньше <code>lookbehind</code> символов (по умолчанию {@link #DEFAULT_LOOKBEHIND}), чтобы \b, ^ и просмотр назад
+ * видели левый контекст; просмотр назад дальше них не поддерживается.<br/>
+ * Экземпляр не потокобезопасен.
+ */
+public class StreamingMatcher implements Closeable {
+    private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    /**
+     * Число символов перед позицией поиска, сохраняемых в окне по умолчанию
+     */
+    public static final int DEFAULT_LOOKBEHIND = 16;
+
+    /**
+     * Соответствие шаблону в потоке
+     */
+    public static final class Match {
+        private final String group;
+        private final long charOffset;
+        private final long byteOffset;
+
+        Match(String group, long charOffset, long byteOffset) {
+            this.group = group;
+            this.charOffset = charOffset;
+            this.byteOffset = byteOffset;
+        }
+
+        /**
+         * @return Текст соответствия
+         */
+        public String group() {
+            return group;
+        }
+
+        /**
+         * @return Номер первого символа соответствия от начала потока
+         */
+        public long getCharOffset() {
+            return charOffset;
+        }
+
+        /**
+         * @return Смещение первого байта соответствия от начала потока для кодировки UTF-8, иначе -1
+         */
+        public long getByteOffset() {
+            return byteOffset;
+        }
+
+        @Override
+        public String toString() {
+            return byteOffset + ":" + group;
+        }
+    }
+
+    private final ReadableByteChannel channel;
+    private final Matcher matcher;
+    private final int maxMatchLength;
+    private final int lookbehind;
+    private final CharsetDecoder decoder;
+    private final boolean utf8;
+    private final ByteBuffer bytes;
+    private CharBuffer window;
+    private boolean eof;
+    /**
+     * Номер первого символа окна от начала потока
+     */
+    private long windowOffset;
+    /**
+     * Позиция (в окне), с которой продолжается поиск
+     */
+    private int position;
+    /**
+     * Позиция (в окне) и соответствующее ей смещение в байтах для подсчета смещений UTF-8
+     */
+    private int cursor;
+    private long cursorByteOffset;
+
+    /**
+     * @param channel        Источник данных; закрывается методом {@link #close()}
+     * @param charset        Кодировка данных
+     * @param pattern        Шаблон поиска
+     * @param maxMatchLength Максимальная длина соответствия в символах
+     */
+    public StreamingMatcher(ReadableByteChannel channel, Charset charset, Pattern pattern, int maxMatchLength) {
+        this(channel, charset, pattern, maxMatchLength, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize Размер блока чтения в байтах
+     * @throws IllegalArgumentException если <code>maxMatchLength</code> или <code>chunkSize</code> не положительны
+     */
+    public StreamingMatcher(ReadableByteChannel channel, Charset charset, Pattern pattern, int maxMatchLength,
+                            int chunkSize) {
+        this(channel, charset, pattern, maxMatchLength, chunkSize, DEFAULT_LOOKBEHIND);
+    }
+
+    /**
+     * @param lookbehind Сколько символов перед позицией поиска сохранять в окне для \b, ^ и просмотра назад
+     * @throws IllegalArgumentException если <code>maxMatchLength</code> или <code>chunkSize</code> не положительны
+     *                                  или <code>lookbehind</code> отрицательно
+     */
+    public StreamingMatcher(ReadableByteChannel channel, Charset charset, Pattern pattern, int maxMatchLength,
+                            int chunkSize, int lookbehind) {
+        if (maxMatchLength <= 0 || chunkSize <= 0 || lookbehind < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.channel = channel;
+        this.maxMatchLength = maxMatchLength;
+        this.lookbehind = lookbehind;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.utf8 = StandardCharsets.UTF_8.equals(charset);
+        // не меньше длины самого длинного символа в байтах, иначе незавершенный символ не поместится
+        this.bytes = ByteBuffer.allocate(Math.max(chunkSize, 16));
+        this.window = CharBuffer.allocate(Math.max(chunkSize, maxMatchLength + lookbehind) * 2);
+        this.window.limit(0);
+        this.matcher = pattern.matcher(window);
+        this.matcher.useTransparentBounds(true);
+        this.matcher.useAnchoringBounds(false);
+        this.eof = false;
+        this.windowOffset = 0;
+        this.position = 0;
+        this.cursor = 0;
+        this.cursorByteOffset = 0;
+    }
+
+    /**
+     * @return Следующее соответствие или <code>null</code>, если данные закончились
+     * @throws IOException при ошибке чтения
+     */
+    public Match next() throws IOException {
+        while (true) {
+            int end = window.limit();
+            if (position <= end) {
+                matcher.region(position, end);
+                if (matcher.find()) {
+                    int start = matcher.start();
+                    if (eof || !matcher.hitEnd() || start + maxMatchLength <= end) {
+                        position = matcher.end() == start ? matcher.end() + 1 : matcher.end();
+                        return new Match(matcher.group(), windowOffset + start, byteOffset(start));
+                    }
+                }
+            }
+            if (eof) {
+                return null;
+            }
+            compact(Math.min(Math.max(position, end - maxMatchLength), end));
+            fill();
+        }
+    }
+
+    /**
+     * Передает все оставшиеся соответствия в <code>listener</code>
+     *
+     * @throws IOException при ошибке чтения
+     */
+    public void forEach(Consumer<? super Match> listener) throws IOException {
+        Match match;
+        while ((match = next()) != null) {
+            listener.accept(match);
+        }
+    }
+
+    /**
+     * @return Ленивый поток оставшихся соответствий; закрытие потока закрывает и источник данных.
+     * Ошибки чтения выбрасываются как {@link UncheckedIOException}.
+     */
+    public Stream<Match> stream() {
+        Spliterator<Match> spliterator = new Spliterators.AbstractSpliterator<Match>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Match> action) {
+                try {
+                    Match match = next();
+                    if (match == null) {
+                        return false;
+                    }
+                    action.accept(match);
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private long byteOffset(int index) {
+        if (!utf8) {
+            return -1;
+        }
+        for (; cursor < index; cursor++) {
+            char c = window.get(cursor);
+            if (c < 0x80) {
+                cursorByteOffset += 1;
+            } else if (c < 0x800) {
+                cursorByteOffset += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                cursorByteOffset += 4;
+            } else if (!Character.isLowSurrogate(c)) {
+                cursorByteOffset += 3;
+            }
+        }
+        return cursorByteOffset;
+    }
+
+    /**
+     * Отбрасывает символы окна до позиции <code>keep</code> (начинаться с них соответствия уже не могут),
+     * кроме <code>lookbehind</code> последних из них
+     */
+    private void compact(int keep) {
+        int discard = keep - lookbehind;
+        if (discard > 0) {
+            byteOffset(discard);
+            window.position(discard);
+            window.compact();
+            window.flip();
+            windowOffset += discard;
+            position = Math.max(position, keep) - discard;
+            cursor -= discard;
+        }
+    }
+
+    /**
+     * Дочитывает и декодирует следующий блок в конец окна
+     */
+    private void fill() throws IOException {
+        int read = channel.read(bytes);
+        bytes.flip();
+        int end = window.limit();
+        if (window.capacity() - end < bytes.remaining() + 2) {
+            CharBuffer larger = CharBuffer.allocate(window.capacity() * 2 + bytes.remaining());
+            window.rewind();
+            larger.put(window);
+            larger.flip();
+            window = larger;
+            matcher.reset(window);
+        }
+        window.position(end);
+        window.limit(window.capacity());
+        CoderResult result = decoder.decode(bytes, window, read < 0);
+        if (read < 0) {
+            result = decoder.flush(window);
+            eof = true;
+        }
+        if (result.isError()) {
+            try {
+                result.throwException();
+            } catch (CharacterCodingException e) {
+                throw new IOException(e);
+            }
+        }
+        window.flip();
+        bytes.compact();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}